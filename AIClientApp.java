@@ -4,9 +4,35 @@
 // The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
 // THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
+import java.util.*;
+import java.util.concurrent.*;
+
 /** class containing a main() method to initialize an AI client */
 public class AIClientApp {
+  /** starts AI client, played by HeuristicAI unless the first argument is "sampling"
+      (which may be followed by the number of samples per decision, then "sequential", "root", or "leaf" to pick how they are split between threads)
+      or "ismcts" (which may be followed by the number of milliseconds to search per move) */
   public static void main(String[] args) {
-    ClientApp app = new ClientApp(true); // passing true indicates to make AI client
+    GameAI ai;
+    SamplingAI samplingAI;
+    if (args.length > 0 && args[0].equals("sampling")) {
+      samplingAI = new SamplingAI(new XoshiroRandom(new Random().nextLong()),
+                                  (args.length > 1) ? Integer.parseInt(args[1]) : SamplingAI.DefaultSamples, SamplingAI.DefaultSearchTricks, true);
+      if (args.length <= 2 || args[2].equals("root")) {
+        samplingAI.setParallelism(SamplingAI.Parallelism.Root, ForkJoinPool.commonPool());
+      }
+      else if (args[2].equals("leaf")) {
+        samplingAI.setParallelism(SamplingAI.Parallelism.Leaf, ForkJoinPool.commonPool());
+      }
+      ai = samplingAI;
+    }
+    else if (args.length > 0 && args[0].equals("ismcts")) {
+      ai = new ISMCTSAI(new XoshiroRandom(new Random().nextLong()),
+                        (args.length > 1) ? Long.parseLong(args[1]) : ISMCTSAI.DefaultTimeBudget, Integer.MAX_VALUE, true);
+    }
+    else {
+      ai = new HeuristicAI(new Random(), true);
+    }
+    ClientApp app = new ClientApp(ai);
   }
 }
@@ -0,0 +1,328 @@
+// BinaryMsgCodec.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.util.*;
+
+/** message codec that writes each message as a type byte followed by its fields
+    (this is much smaller and faster than Java serialization, and doesn't keep any state between messages)
+
+    Version 2 of the protocol adds LobbyDeltaMsg, and the version and game IDs of GameSessionListMsg. */
+public class BinaryMsgCodec implements MsgCodec {
+  public static final int ProtocolVersion = 2; /**< newest version of binary protocol that this codec supports */
+
+  // first bytes of the hello frame that a client sends to request the binary protocol
+  private static final byte HelloMagic0 = 'G';
+  private static final byte HelloMagic1 = 'W';
+
+  // type byte of each message class
+  private static final byte TypeCloseConnection = 1;
+  private static final byte TypeSignIn = 2;
+  private static final byte TypeString = 3;
+  private static final byte TypePlayerStats = 4;
+  private static final byte TypeGameSession = 5;
+  private static final byte TypeGameSessionList = 6;
+  private static final byte TypeStartGame = 7;
+  private static final byte TypeGamePlay = 8;
+  private static final byte TypeGameOver = 9;
+  private static final byte TypeLobbyDelta = 10;
+
+  private final int version; /**< version of binary protocol that messages are encoded with */
+
+  /** constructor for codec using latest protocol version */
+  public BinaryMsgCodec() {
+    this(ProtocolVersion);
+  }
+
+  /** constructor for codec using specified protocol version */
+  public BinaryMsgCodec(int newVersion) {
+    version = newVersion;
+  }
+
+  public byte[] encode(Object msg) throws IOException {
+    ByteArrayOutputStream frame = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(frame);
+    if (msg instanceof CloseConnectionMsg) {
+      out.writeByte(TypeCloseConnection);
+    }
+    else if (msg instanceof SignInMsg) {
+      SignInMsg signIn = (SignInMsg)msg;
+      out.writeByte(TypeSignIn);
+      writeString(out, signIn.playerName);
+      writeString(out, signIn.password);
+      out.writeBoolean(signIn.newPlayer);
+    }
+    else if (msg instanceof StringMsg) {
+      StringMsg string = (StringMsg)msg;
+      out.writeByte(TypeString);
+      out.writeByte(string.type.ordinal());
+      writeString(out, string.message);
+    }
+    else if (msg instanceof PlayerStatsMsg) {
+      out.writeByte(TypePlayerStats);
+      writePlayers(out, ((PlayerStatsMsg)msg).players);
+    }
+    else if (msg instanceof GameSessionMsg) {
+      out.writeByte(TypeGameSession);
+      writeGameSession(out, (GameSessionMsg)msg);
+    }
+    else if (msg instanceof GameSessionListMsg) {
+      GameSessionListMsg gameSessionList = (GameSessionListMsg)msg;
+      out.writeByte(TypeGameSessionList);
+      if (gameSessionList.games == null) {
+        out.writeInt(-1); // request for list
+      }
+      else {
+        out.writeInt(gameSessionList.games.size());
+        for (int i = 0; i < gameSessionList.games.size(); i++) {
+          writeGameSession(out, gameSessionList.games.get(i));
+        }
+      }
+      if (version >= LobbyDeltaMsg.MinProtocolVersion) {
+        out.writeInt(gameSessionList.version);
+        out.writeBoolean(gameSessionList.gameIds != null);
+        if (gameSessionList.gameIds != null) {
+          for (int i = 0; i < gameSessionList.gameIds.length; i++) {
+            out.writeInt(gameSessionList.gameIds[i]);
+          }
+        }
+      }
+    }
+    else if (msg instanceof LobbyDeltaMsg && version >= LobbyDeltaMsg.MinProtocolVersion) {
+      LobbyDeltaMsg delta = (LobbyDeltaMsg)msg;
+      out.writeByte(TypeLobbyDelta);
+      out.writeByte(delta.type.ordinal());
+      out.writeInt(delta.version);
+      out.writeInt(delta.gameId);
+      out.writeByte(delta.players.size());
+      for (String player : delta.players) {
+        out.writeUTF(player);
+      }
+    }
+    else if (msg instanceof StartGameMsg) {
+      StartGameMsg startGame = (StartGameMsg)msg;
+      out.writeByte(TypeStartGame);
+      out.writeLong(startGame.seed);
+      out.writeBoolean(startGame.players != null);
+      if (startGame.players != null) {
+        writeGameSession(out, startGame.players);
+      }
+    }
+    else if (msg instanceof GamePlayMsg) {
+      out.writeByte(TypeGamePlay);
+      writeSmallInt(out, ((GamePlayMsg)msg).card);
+    }
+    else if (msg instanceof GameOverMsg) {
+      GameOverMsg gameOver = (GameOverMsg)msg;
+      out.writeByte(TypeGameOver);
+      out.writeBoolean(gameOver.complete);
+      out.writeBoolean(gameOver.tie);
+      writeSmallInt(out, gameOver.winner);
+    }
+    else {
+      throw new NotSerializableException("No binary encoding for " + msg.getClass().getName());
+    }
+    return frame.toByteArray();
+  }
+
+  public Object decode(byte[] frame) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+    Object ret;
+    byte type = in.readByte();
+    switch (type) {
+      case TypeCloseConnection:
+        ret = new CloseConnectionMsg();
+        break;
+      case TypeSignIn:
+        SignInMsg signIn = new SignInMsg();
+        signIn.playerName = readString(in);
+        signIn.password = readString(in);
+        signIn.newPlayer = in.readBoolean();
+        ret = signIn;
+        break;
+      case TypeString:
+        int stringType = in.readUnsignedByte();
+        if (stringType >= StringMsg.MsgType.values().length) {
+          throw new StreamCorruptedException("Invalid StringMsg type " + stringType);
+        }
+        ret = new StringMsg(StringMsg.MsgType.values()[stringType], readString(in));
+        break;
+      case TypePlayerStats:
+        PlayerStatsMsg playerStats = new PlayerStatsMsg();
+        playerStats.players = readPlayers(in);
+        ret = playerStats;
+        break;
+      case TypeGameSession:
+        ret = readGameSession(in);
+        break;
+      case TypeGameSessionList:
+        GameSessionListMsg gameSessionList = new GameSessionListMsg();
+        int nGames = in.readInt();
+        if (nGames >= 0) {
+          gameSessionList.games = new ArrayList<GameSessionMsg>();
+          for (int i = 0; i < nGames; i++) {
+            gameSessionList.games.add(readGameSession(in));
+          }
+        }
+        if (version >= LobbyDeltaMsg.MinProtocolVersion) {
+          gameSessionList.version = in.readInt();
+          if (in.readBoolean()) {
+            gameSessionList.gameIds = new int[Math.max(nGames, 0)];
+            for (int i = 0; i < gameSessionList.gameIds.length; i++) {
+              gameSessionList.gameIds[i] = in.readInt();
+            }
+          }
+        }
+        ret = gameSessionList;
+        break;
+      case TypeLobbyDelta:
+        if (version < LobbyDeltaMsg.MinProtocolVersion) {
+          throw new StreamCorruptedException("LobbyDeltaMsg requires protocol version " + LobbyDeltaMsg.MinProtocolVersion);
+        }
+        LobbyDeltaMsg delta = new LobbyDeltaMsg();
+        int deltaType = in.readUnsignedByte();
+        if (deltaType >= LobbyDeltaMsg.DeltaType.values().length) {
+          throw new StreamCorruptedException("Invalid LobbyDeltaMsg type " + deltaType);
+        }
+        delta.type = LobbyDeltaMsg.DeltaType.values()[deltaType];
+        delta.version = in.readInt();
+        delta.gameId = in.readInt();
+        int nPlayers = in.readUnsignedByte();
+        delta.players = new ArrayList<String>(nPlayers);
+        for (int i = 0; i < nPlayers; i++) {
+          delta.players.add(in.readUTF());
+        }
+        ret = delta;
+        break;
+      case TypeStartGame:
+        StartGameMsg startGame = new StartGameMsg();
+        startGame.seed = in.readLong();
+        if (in.readBoolean()) {
+          startGame.players = readGameSession(in);
+        }
+        ret = startGame;
+        break;
+      case TypeGamePlay:
+        ret = new GamePlayMsg(in.readByte());
+        break;
+      case TypeGameOver:
+        GameOverMsg gameOver = new GameOverMsg();
+        gameOver.complete = in.readBoolean();
+        gameOver.tie = in.readBoolean();
+        gameOver.winner = in.readByte();
+        ret = gameOver;
+        break;
+      default:
+        throw new StreamCorruptedException("Unknown message type " + type);
+    }
+    if (in.available() > 0) {
+      throw new StreamCorruptedException("Unexpected bytes after message of type " + type);
+    }
+    return ret;
+  }
+
+  public long getRetainedBytes() {
+    return 0; // nothing is kept between messages
+  }
+
+  /** returns hello frame requesting (or, in the server's reply, agreeing to) specified protocol version */
+  public static byte[] hello(int version) {
+    return new byte[] {HelloMagic0, HelloMagic1, (byte)version};
+  }
+
+  /** returns protocol version requested by specified frame,
+      or -1 if the frame isn't a hello frame */
+  public static int helloVersion(byte[] frame) {
+    if (frame.length != 3 || frame[0] != HelloMagic0 || frame[1] != HelloMagic1) {
+      return -1;
+    }
+    return frame[2] & 0xff;
+  }
+
+  /** write string that may be null */
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null) {
+      out.writeUTF(str);
+    }
+  }
+
+  /** read string that may be null */
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /** write int that fits in a single byte (such as a card or player index) */
+  private static void writeSmallInt(DataOutputStream out, int value) throws IOException {
+    if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+      throw new IOException("Value " + value + " is too large to encode");
+    }
+    out.writeByte(value);
+  }
+
+  /** write game session message (without type byte) */
+  private static void writeGameSession(DataOutputStream out, GameSessionMsg msg) throws IOException {
+    out.writeBoolean(msg.playing);
+    if (msg.players == null) {
+      out.writeByte(-1);
+      return;
+    }
+    writeSmallInt(out, msg.players.size());
+    for (int i = 0; i < msg.players.size(); i++) {
+      out.writeUTF(new String(msg.players.get(i)));
+    }
+  }
+
+  /** read game session message (without type byte) */
+  private static GameSessionMsg readGameSession(DataInputStream in) throws IOException {
+    GameSession session = new GameSession();
+    GameSessionMsg ret;
+    session.playing = in.readBoolean();
+    int nPlayers = in.readByte();
+    for (int i = 0; i < nPlayers; i++) {
+      session.players.add(in.readUTF());
+    }
+    ret = new GameSessionMsg(session);
+    if (nPlayers < 0) {
+      ret.players = null;
+    }
+    return ret;
+  }
+
+  /** write player list for leaderboard
+      (passwords are never sent, see ServerApp.sendLeaderboard()) */
+  private static void writePlayers(DataOutputStream out, ArrayList<PlayerData> players) throws IOException {
+    if (players == null) {
+      out.writeInt(-1); // client is requesting leaderboard
+      return;
+    }
+    out.writeInt(players.size());
+    for (int i = 0; i < players.size(); i++) {
+      out.writeUTF(players.get(i).getName());
+      out.writeInt(players.get(i).getGamesWon());
+      out.writeInt(players.get(i).getGamesPlayed());
+    }
+  }
+
+  /** read player list for leaderboard, giving each player the same placeholder password as the server does */
+  private static ArrayList<PlayerData> readPlayers(DataInputStream in) throws IOException {
+    ArrayList<PlayerData> ret;
+    int nPlayers = in.readInt();
+    if (nPlayers < 0) {
+      return null;
+    }
+    ret = new ArrayList<PlayerData>(Math.min(nPlayers, in.available()));
+    for (int i = 0; i < nPlayers; i++) {
+      try {
+        ret.add(new PlayerData(in.readUTF(), "\n", in.readInt(), in.readInt()));
+      }
+      catch (IllegalArgumentException ex) {
+        throw new StreamCorruptedException("Invalid player data: " + ex.getMessage());
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,72 @@
+// Broadcast.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.nio.*;
+
+/** message that the server sends to several clients,
+    which is encoded once for each binary protocol version instead of once for each client
+
+    The encoded frame is kept in a read-only buffer that every client's PlayerSocket queues a view of,
+    so the bytes are shared rather than copied. Clients using ObjectStreamCodec still encode the message themselves,
+    since each object stream refers back to what was previously written to it. */
+public class Broadcast {
+  private Object msg; /**< message to send */
+  private ByteBuffer[] frames; /**< length-prefixed frame of message for each binary protocol version (null until encoded) */
+  private int recipients; /**< number of clients that the message was sent to */
+  private int encodes; /**< number of times the message was encoded */
+
+  /** constructor for broadcast of specified message */
+  public Broadcast(Object newMsg) {
+    msg = newMsg;
+    frames = new ByteBuffer[BinaryMsgCodec.ProtocolVersion + 1];
+  }
+
+  /** returns read-only view of length-prefixed frame of message in specified binary protocol version,
+      encoding it only if this is the first recipient using that version */
+  final ByteBuffer frame(int version) throws IOException {
+    byte[] frame;
+    recipients++;
+    if (frames[version] == null) {
+      frame = new BinaryMsgCodec(version).encode(msg);
+      PlayerSocket.checkFrameSize(frame);
+      frames[version] = ByteBuffer.allocate(4 + frame.length);
+      frames[version].putInt(frame.length);
+      frames[version].put(frame);
+      frames[version].flip();
+      frames[version] = frames[version].asReadOnlyBuffer();
+      encodes++;
+    }
+    return frames[version].duplicate(); // so that each recipient has its own position
+  }
+
+  /** returns frame of message encoded by specified codec (for recipients that can't share a frame) */
+  final byte[] encode(MsgCodec codec) throws IOException {
+    recipients++;
+    encodes++;
+    return codec.encode(msg);
+  }
+
+  /** getter for message */
+  public final Object getMsg() {
+    return msg;
+  }
+
+  /** getter for number of clients that the message was sent to */
+  public final int getRecipients() {
+    return recipients;
+  }
+
+  /** getter for number of times the message was encoded */
+  public final int getEncodes() {
+    return encodes;
+  }
+
+  /** returns number of encodes saved by encoding message once instead of once for each recipient */
+  public final int getEncodesSaved() {
+    return recipients - encodes;
+  }
+}
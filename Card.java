@@ -9,7 +9,9 @@ import java.awt.*;
 import javax.swing.*;
 import java.io.*;
 
-/** represents a single playing card and stores images for each card */
+/** represents a single playing card and stores images for each card
+    (there is exactly one immutable instance of each of the 52 cards, obtained with get(), so cards may be compared by identity;
+    whether a card is face up belongs to the deck holding it) */
 public class Card implements Serializable {
   public enum Suit {
     Clubs, Diamonds, Hearts, Spades
@@ -27,10 +29,12 @@ public class Card implements Serializable {
   private static final String ImgPath = "cards/"; /**< folder where card images are saved */
   private static final String BackImgPath = ImgPath + "b.gif"; /**< file path of card back image */
 
+  private static final Card[] Cards; /**< the only instance of each card, indexed by CardSet index */
+
   // properties of this card
-  private int rank; /**< rank of the card between 2 and 14, where 11-13 are face cards and 14 is an ace (which has the greatest worth in German Whist */
-  private Suit suit; /**< suit of the card (Clubs, Diamonds, Heats, or Spades) */
-  private boolean faceUp; /**< whether this card is face up */
+  private final int rank; /**< rank of the card between 2 and 14, where 11-13 are face cards and 14 is an ace (which has the greatest worth in German Whist */
+  private final Suit suit; /**< suit of the card (Clubs, Diamonds, Heats, or Spades) */
+  private final int index; /**< index of this card between 0 and 51 (same as its bit index in a CardSet) */
 
   // variables related to card images
   private static boolean imgsLoaded = false; /**< whether all images have been loaded */
@@ -41,16 +45,43 @@ public class Card implements Serializable {
       (this was originally an ArrayList of ArrayLists, but reading out of it was very slow due to required casts to ArrayList and ImageIcon (freezing my computer at times), so I changed it to a multidimensional array) */
   private static ImageIcon[][] frontImgs;
 
-  /** constructor for playing card */
-  public Card(int newRank, Suit newSuit, boolean newFaceUp) {
-    // throw exception if rank is invalid
-    if (newRank < MinRank || newRank > MaxRank) {
-      throw new IllegalArgumentException("Rank must be between " + MinRank + " and " + MaxRank);
+  static {
+    int rank;
+    Cards = new Card[CardSet.NCards];
+    for (Suit suit : Suit.values()) {
+      for (rank = MinRank; rank <= MaxRank; rank++) {
+        Cards[CardSet.index(rank, suit)] = new Card(rank, suit);
+      }
     }
-    // remember suit, rank, and whether is face up
+  }
+
+  /** constructor for playing card (only called to create the 52 shared instances) */
+  private Card(int newRank, Suit newSuit) {
     rank = newRank;
     suit = newSuit;
-    faceUp = newFaceUp;
+    index = CardSet.index(newRank, newSuit);
+  }
+
+  /** returns the card with specified rank and suit */
+  public static Card get(int rank, Suit suit) {
+    // throw exception if rank is invalid
+    if (rank < MinRank || rank > MaxRank) {
+      throw new IllegalArgumentException("Rank must be between " + MinRank + " and " + MaxRank);
+    }
+    return Cards[CardSet.index(rank, suit)];
+  }
+
+  /** returns the card with specified index (see getIndex()) */
+  public static Card get(int cardIndex) {
+    if (cardIndex < 0 || cardIndex >= Cards.length) {
+      throw new IndexOutOfBoundsException("Card index must be between 0 and " + (Cards.length - 1));
+    }
+    return Cards[cardIndex];
+  }
+
+  /** replace deserialized card with the shared instance, so identity comparison still works */
+  private Object readResolve() {
+    return Cards[index];
   }
 
   /** load playing card images (must call this once before drawing any cards) */
@@ -108,8 +139,8 @@ public class Card implements Serializable {
     imgsLoaded = true;
   }
 
-  /** draw card centered at specified position */
-  public final void draw(Component c, Graphics2D g2, Point pos) {
+  /** draw card centered at specified position, showing its front if faceUp is true and its back otherwise */
+  public final void draw(Component c, Graphics2D g2, Point pos, boolean faceUp) {
     ImageIcon cardImg;
     // throw exception if card images are not loaded
     if (!imgsLoaded) {
@@ -124,14 +155,15 @@ public class Card implements Serializable {
     cardImg.paintIcon(c, g2, pos.x - imgWidth / 2, pos.y - imgHeight / 2);
   }
 
-  /** set whether this card is face up */
-  public void setFaceUp(boolean newFaceUp) {
-    faceUp = newFaceUp;
+  /** returns whether specified object is a card with the same rank and suit as this card
+      (equivalent to identity comparison, since there is only one instance of each card) */
+  public final boolean equals(Object other) {
+    return other instanceof Card && index == ((Card)other).index;
   }
 
-  /** returns whether has same rank and suit as specified card */
-  public final boolean equals(Card otherCard) {
-    return rank == otherCard.getRank() && suit == otherCard.getSuit();
+  /** returns hash code of this card, which is its index */
+  public final int hashCode() {
+    return index;
   }
 
   /** returns rank and first character of suit as String
@@ -150,6 +182,11 @@ public class Card implements Serializable {
     return suit;
   }
 
+  /** getter for index between 0 and 51, ordered by suit and then rank (same as the card's bit index in a CardSet) */
+  public final int getIndex() {
+    return index;
+  }
+
   /** getter for card image width */
   public static final int getImgWidth() {
     return imgWidth;
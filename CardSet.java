@@ -0,0 +1,134 @@
+// CardSet.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/** helper functions for sets of cards stored as the bits of a long
+    (bit suit * NRanks + rank - Card.MinRank is set if the card is in the set,
+    so each suit occupies 13 consecutive bits and the cards within a suit are ordered by rank) */
+public final class CardSet {
+  public static final int NRanks = Card.MaxRank - Card.MinRank + 1; /**< number of ranks in each suit */
+  public static final int NCards = NRanks * Card.Suit.values().length; /**< number of cards in a standard deck */
+  public static final long Empty = 0L; /**< set containing no cards */
+  public static final long All = (1L << NCards) - 1; /**< set containing every card in a standard deck */
+
+  private static final long SuitBits = (1L << NRanks) - 1; /**< mask of the lowest suit, shifted to get the other suits */
+  private static final Card.Suit[] Suits = Card.Suit.values(); /**< cached so suitOf() doesn't clone the values array */
+
+  /** this class only has static members */
+  private CardSet() {
+  }
+
+  /** returns bit index of card with specified rank and suit */
+  public static int index(int rank, Card.Suit suit) {
+    return suit.ordinal() * NRanks + rank - Card.MinRank;
+  }
+
+  /** returns set containing only the card with specified rank and suit */
+  public static long of(int rank, Card.Suit suit) {
+    return 1L << index(rank, suit);
+  }
+
+  /** returns set containing only the specified card */
+  public static long of(Card card) {
+    return 1L << card.getIndex();
+  }
+
+  /** returns rank of card with specified bit index */
+  public static int rankOf(int index) {
+    return index % NRanks + Card.MinRank;
+  }
+
+  /** returns suit of card with specified bit index */
+  public static Card.Suit suitOf(int index) {
+    return Suits[index / NRanks];
+  }
+
+  /** returns mask of all cards in specified suit */
+  public static long suitMask(Card.Suit suit) {
+    return SuitBits << (suit.ordinal() * NRanks);
+  }
+
+  /** returns whether set contains specified card */
+  public static boolean contains(long set, Card card) {
+    return (set & of(card)) != 0;
+  }
+
+  /** returns whether set contains any card of specified suit */
+  public static boolean hasSuit(long set, Card.Suit suit) {
+    return (set & suitMask(suit)) != 0;
+  }
+
+  /** returns number of cards in set */
+  public static int size(long set) {
+    return Long.bitCount(set);
+  }
+
+  /** returns number of cards of specified suit in set */
+  public static int size(long set, Card.Suit suit) {
+    return Long.bitCount(set & suitMask(suit));
+  }
+
+  /** returns bit index of lowest card in set, or 64 if set is empty */
+  public static int lowest(long set) {
+    return Long.numberOfTrailingZeros(set);
+  }
+
+  /** returns bit index of highest card in set, or -1 if set is empty */
+  public static int highest(long set) {
+    return 63 - Long.numberOfLeadingZeros(set);
+  }
+
+  /** returns bit index of the nth lowest card in set (counting from 0), or 64 if set has n or fewer cards
+      (binary searches for the bit by counting the cards in halves of the set, instead of clearing n bits one at a time) */
+  public static int select(long set, int n) {
+    int ret = 0;
+    int width, count;
+    if (n >= Long.bitCount(set)) {
+      return 64;
+    }
+    for (width = 32; width > 0; width >>= 1) {
+      count = Long.bitCount(set & ((1L << width) - 1));
+      if (n >= count) {
+        // bit is in the upper half, so skip the lower half
+        n -= count;
+        set >>>= width;
+        ret += width;
+      }
+    }
+    return ret;
+  }
+
+  /** returns lowest rank of cards of specified suit in set, or Card.MaxRank + 1 if set has no cards of that suit */
+  public static int lowestRank(long set, Card.Suit suit) {
+    long suitSet = set & suitMask(suit);
+    if (suitSet == 0) {
+      return Card.MaxRank + 1;
+    }
+    return rankOf(lowest(suitSet));
+  }
+
+  /** returns highest rank of cards of specified suit in set, or 0 if set has no cards of that suit */
+  public static int highestRank(long set, Card.Suit suit) {
+    long suitSet = set & suitMask(suit);
+    if (suitSet == 0) {
+      return 0;
+    }
+    return rankOf(highest(suitSet));
+  }
+
+  /** returns String containing rank and suit of all cards in set, in the same format as Deck.getString() */
+  public static String getString(long set) {
+    StringBuilder ret = new StringBuilder();
+    int i;
+    while (set != 0) {
+      i = lowest(set);
+      set &= set - 1; // clear lowest bit
+      ret.append(rankOf(i));
+      ret.append(suitOf(i).toString().charAt(0));
+      ret.append(" ");
+    }
+    return ret.toString();
+  }
+}
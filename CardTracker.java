@@ -0,0 +1,164 @@
+// CardTracker.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/** what one player of a 2-player game knows about the cards they can't see,
+    so AIs can deal the opponent's hand and the face-down talon at random consistently with it
+
+    Face-up talon cards that the opponent took are known to be in their hand.
+    Each other card in the opponent's hand has a mask of suits it may be:
+    when the opponent doesn't follow suit, none of the cards they held then can be of the suit led
+    (though cards they draw later can be). */
+public class CardTracker {
+  private static final int AllSuits = (1 << 4) - 1; /**< mask of every suit that a card may be */
+  private static final long[] SuitSets; /**< CardSet of every card of the suits in each mask of suits */
+
+  private GameEngine game; /**< game being tracked */
+  private int player; /**< player ID whose knowledge is tracked */
+  private long played; /**< CardSet of cards that have been played */
+  private long prevHand; /**< CardSet of player's hand as of the last update */
+  private int talonTop; /**< index of face-up talon card as of the last update (-1 if talon was empty) */
+  private int talonSize; /**< number of cards in talon as of the last update */
+  private long oppKnown; /**< CardSet of cards known to be in the opponent's hand (face-up talon cards they took) */
+  private int[] oppSlots; /**< mask of suits that each other card in the opponent's hand may be, oldest card first */
+  private int nOppSlots; /**< number of other cards in the opponent's hand */
+  private long unseen; /**< CardSet of cards that the player hasn't seen, except the ones known to be in the opponent's hand */
+
+  static {
+    int mask;
+    SuitSets = new long[AllSuits + 1];
+    for (mask = 0; mask <= AllSuits; mask++) {
+      for (Card.Suit suit : Card.Suit.values()) {
+        if ((mask & (1 << suit.ordinal())) != 0) {
+          SuitSets[mask] |= CardSet.suitMask(suit);
+        }
+      }
+    }
+  }
+
+  /** constructor for card tracker */
+  public CardTracker() {
+    oppSlots = new int[CardSet.NCards];
+  }
+
+  /** start tracking what specified player knows in a new game */
+  public void newGame(GameEngine newGame, int newPlayer) {
+    game = newGame;
+    player = newPlayer;
+    played = CardSet.Empty;
+    prevHand = CardSet.Empty;
+    talonTop = -1;
+    talonSize = 0;
+    oppKnown = CardSet.Empty;
+    nOppSlots = 0;
+    if (newGame.getNPlayers() == 2) {
+      // opponent's dealt cards may be any suit
+      while (nOppSlots < newGame.getPlayer(1 - newPlayer).getHand().size()) {
+        oppSlots[nOppSlots++] = AllSuits;
+      }
+    }
+    update();
+  }
+
+  /** updates what the player knows (must be called after every card played) */
+  public void update() {
+    Deck trick = game.getTrick(); // includes the last card of a complete trick, which getCurrentTrick() leaves out
+    Deck talon = game.getTalon();
+    long newCards = trick.getCardSet() & ~played;
+    Card card;
+    int i;
+    // find who played the new cards
+    for (i = 0; i < trick.size(); i++) {
+      card = trick.getCard(i);
+      if ((newCards & CardSet.of(card)) != 0 && (prevHand & CardSet.of(card)) == 0) {
+        oppPlayed(card, (i == 0) ? null : trick.getCard(0).getSuit());
+      }
+    }
+    played |= newCards;
+    // find which talon cards the opponent drew
+    if (talon.size() < talonSize && game.getNPlayers() == 2) {
+      if (game.getPrevWinner() == player) {
+        oppSlots[nOppSlots++] = AllSuits; // opponent drew the face-down card
+      }
+      else {
+        oppKnown |= 1L << talonTop; // opponent took the face-up card
+      }
+    }
+    prevHand = game.getPlayer(player).getHand().getCardSet();
+    talonSize = talon.size();
+    talonTop = (talon.size() > 0) ? talon.getTopCard().getIndex() : -1;
+    unseen = CardSet.All & ~played & ~prevHand & ~oppKnown & ~((talonTop >= 0) ? 1L << talonTop : CardSet.Empty);
+  }
+
+  /** record that the opponent played specified card, following specified led suit (null if the opponent led) */
+  private void oppPlayed(Card card, Card.Suit leadSuit) {
+    int suitBit = 1 << card.getSuit().ordinal();
+    int i;
+    if (leadSuit != null && leadSuit != card.getSuit()) {
+      // opponent is out of the suit led, so none of their other cards are that suit
+      for (i = 0; i < nOppSlots; i++) {
+        oppSlots[i] &= ~(1 << leadSuit.ordinal());
+      }
+    }
+    if ((oppKnown & CardSet.of(card)) != 0) {
+      oppKnown &= ~CardSet.of(card);
+      return;
+    }
+    if (nOppSlots == 0) {
+      return; // missed an update, which isConsistent() will notice
+    }
+    // card came from the oldest slot that may be its suit, which leaves the fewest constraints on the other slots
+    // (each void applies to every slot held at the time, so older slots can only be fewer suits than newer ones)
+    i = 0;
+    while (i < nOppSlots - 1 && (oppSlots[i] & suitBit) == 0) {
+      i++;
+    }
+    System.arraycopy(oppSlots, i + 1, oppSlots, i, nOppSlots - i - 1);
+    nOppSlots--;
+  }
+
+  /** returns whether the cards the player hasn't seen add up to the opponent's hand and the face-down talon
+      (if not, an update was missed, and dealOpponent() won't deal the right number of cards) */
+  public boolean isConsistent() {
+    return game.getNPlayers() == 2 && CardSet.size(unseen) == nOppSlots + Math.max(0, talonSize - 1)
+           && CardSet.size(oppKnown) + nOppSlots == game.getPlayer(1 - player).getHand().size();
+  }
+
+  /** returns a random opponent's hand (as a CardSet) that is consistent with what the player knows,
+      and fills specified array with the order in which the talon cards are drawn (the face-up card first) using the rest of the unseen cards
+      (the opponent gets the cards known to be in their hand, then a random unseen card for each other card in their hand,
+       so the result is only consistent if isConsistent() returns true) */
+  public long dealOpponent(ShuffleRandom rand, int[] talonOrder) {
+    long cards = unseen;
+    long ret = oppKnown;
+    long allowed;
+    int card, i, j, n;
+    for (i = 0; i < nOppSlots; i++) {
+      allowed = cards & SuitSets[oppSlots[i]];
+      if (allowed == 0) {
+        allowed = cards; // shouldn't happen, but don't fail if it does
+      }
+      card = CardSet.select(allowed, rand.nextInt(CardSet.size(allowed)));
+      ret |= 1L << card;
+      cards &= ~(1L << card);
+    }
+    if (talonTop >= 0) {
+      talonOrder[0] = talonTop;
+      for (n = 1; cards != 0; n++) {
+        // shuffle the cards in as they are added (inside-out Fisher-Yates)
+        j = 1 + rand.nextInt(n);
+        talonOrder[n] = talonOrder[j];
+        talonOrder[j] = CardSet.lowest(cards);
+        cards &= cards - 1;
+      }
+    }
+    return ret;
+  }
+
+  /** getter for number of cards in talon as of the last update */
+  public final int getTalonSize() {
+    return talonSize;
+  }
+}
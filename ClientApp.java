@@ -43,7 +43,7 @@ Java requires that all variables and functions are in a class, so there are no g
 
 @section arch High-level Architecture
 
-Instead of using a separate thread for each client connection, I decided to instead poll for new messages with a short timeout in case there are no new messages, influencing my architecture. In the loop() method, the ServerApp class polls for new messages every 200 milliseconds and responds to them if it receives new ones. The ClientApp class sends messages throughout the code, but only receives messages in the method pollServer() which is called every 200 milliseconds using a timer. They network using the PlayerSocket class, which is a wrapper around Java's networking API that represents a single player. Classes that can be used as messages end with Msg, and since I would have written them as structures in C++, I made all variables in these classes publicly accessible. To synchronize games between clients, I decided that since the client needed to know many of the game rules anyway (such as whether a given card is a valid one to play and whether it's a valid time to play it), I might as well implement all of the game rules on the client and only use the server to broadcast messages that each client sends. (I only needed one message type containing a single int saying which card was played. I think this decision reduced the total amount and complexity of the code overall.) To make sure clients start out with the same game, they all use the same random number seed randomly generated by one of the clients to generate the game. The AI is implemented in a subclass of GamePanel called GameAIPanel. Since the AI client benefits from much of the GUI code anyway to sign in and pick a game to join, the main() method that starts the AI client simply creates a ClientApp frame with a different constructor argument. The sole effect on the ClientApp frame is to change the window title and to create a GameAIPanel instead of a GamePanel in the constructor. (Since I used inheritance, the ClientApp code other than the constructor can treat the GameAIPanel in exactly the same way.)
+Instead of using a separate thread for each client connection, the server waits on a single Selector, influencing my architecture. In the loop() method, the ServerApp class wakes up as soon as any client connects or sends data and immediately responds to every whole message that has arrived. (Alternatively, the loopThreads() method gives each client its own thread doing blocking reads, and these threads pass the messages to a single server thread through a command queue so that only one thread ever touches the player and game lists.) The ClientApp class sends messages throughout the code, but only receives messages in the method pollServer() which is called every 200 milliseconds using a timer. They network using the PlayerSocket class, which is a wrapper around Java's networking API that represents a single player. PlayerSocket encodes messages with BinaryMsgCodec, or with ObjectStreamCodec (Java serialization) when talking to clients that don't support the binary protocol. Classes that can be used as messages end with Msg, and since I would have written them as structures in C++, I made all variables in these classes publicly accessible. To synchronize games between clients, the game rules are implemented in the GameEngine class, which has no user interface, so that each client and the server can all run their own copy of each game. Clients only send the server a message containing a single int saying which card was played, and the server plays the card in its copy of the game, rejecting it if it isn't that player's turn or the card isn't valid to play, before broadcasting it to the other clients in the game. The server's copy also decides the result when the last card is played, so the player stats don't depend on what the clients say. To make sure every copy starts out with the same game, they all use the same random number seed randomly generated by one of the clients to generate the game. The AIs implement the GameAI interface and only read a GameEngine: HeuristicAI weights the cards in its hand, SamplingAI solves many random deals of the cards it hasn't seen, and ISMCTSAI searches a tree of moves shared by many random deals until its time per move runs out. A subclass of GamePanel called GameAIPanel asks the AI which card to play whenever it is the AI's turn. Since the AI client benefits from much of the GUI code anyway to sign in and pick a game to join, the main() method that starts the AI client simply creates a ClientApp frame with the AI as the constructor argument. The sole effect on the ClientApp frame is to change the window title and to create a GameAIPanel instead of a GamePanel in the constructor. (Since I used inheritance, the ClientApp code other than the constructor can treat the GameAIPanel in exactly the same way.)
 
 @section ui User Interface
 
@@ -100,14 +100,23 @@ public class ClientApp extends JFrame implements ActionListener, MenuListener {
   private PlayerSocket socket;
   /** ArrayList describing available game sessions (sent from server) */
   private ArrayList<GameSession> games;
+  /** version of available game sessions list, which the next LobbyDeltaMsg should be one more than */
+  private int gamesVersion;
+  /** whether the whole available game sessions list was requested from the server and hasn't arrived yet */
+  private boolean gamesRequested;
   /** description of game session this client is currently in */
   private GameSession currentGame;
 
-  /** constructor for game window */
+  /** constructor for game window (AI clients are played by HeuristicAI) */
   public ClientApp(boolean isAIClient) {
+    this(isAIClient ? new HeuristicAI(new Random(), true) : null);
+  }
+
+  /** constructor for game window whose player is played by specified AI (null for a regular client) */
+  public ClientApp(GameAI ai) {
     int i, j;
     // set up window
-    if (isAIClient) {
+    if (ai != null) {
       setTitle("German Whist (AI)");
     }
     else {
@@ -167,8 +176,8 @@ public class ClientApp extends JFrame implements ActionListener, MenuListener {
     paneJoinGame = new SelectInputPane(this, BackColor, StdInsets);
     paneJoinGame.update("Waiting for available games list...", new ArrayList<String>()); // fall back gracefully if pane isn't ready yet
     panePlayerStats = new PlayerStatsPane(BackColor, StdInsets);
-    if (isAIClient) {
-      panelGame = new GameAIPanel(BackColor);
+    if (ai != null) {
+      panelGame = new GameAIPanel(BackColor, ai);
     }
     else {
       panelGame = new GamePanel(BackColor);
@@ -378,10 +387,68 @@ public class ClientApp extends JFrame implements ActionListener, MenuListener {
     currentPanel = panelName;
   }
 
+  /** returns text of button to join available game session at specified index */
+  private String gameChoice(int index) {
+    StringBuilder choice = new StringBuilder();
+    ArrayList<String> players = games.get(index).players;
+    choice.append(index + 1);
+    choice.append(". ");
+    for (int i = 0; i < players.size(); i++) {
+      choice.append(players.get(i));
+      if (i < players.size() - 1) {
+        choice.append(", ");
+      }
+    }
+    return choice.toString();
+  }
+
+  /** apply specified change to available game sessions and the buttons to join them,
+      returns false if the change doesn't match the list */
+  private boolean applyLobbyDelta(LobbyDeltaMsg msg) {
+    int index = -1;
+    int i;
+    for (i = 0; i < games.size(); i++) {
+      if (games.get(i).id == msg.gameId) {
+        index = i;
+        break;
+      }
+    }
+    if (msg.type == LobbyDeltaMsg.DeltaType.GameAdded) {
+      GameSession game = new GameSession();
+      if (index >= 0) {
+        return false;
+      }
+      game.id = msg.gameId;
+      game.players.addAll(msg.players);
+      games.add(game);
+      paneJoinGame.addChoice(games.size(), gameChoice(games.size() - 1)); // first choice is to host new game
+      return true;
+    }
+    if (index < 0) {
+      return false;
+    }
+    if (msg.type == LobbyDeltaMsg.DeltaType.PlayerJoined) {
+      games.get(index).players.addAll(msg.players);
+      paneJoinGame.setChoice(index + 1, gameChoice(index));
+    }
+    else if (msg.type == LobbyDeltaMsg.DeltaType.PlayerLeft) {
+      games.get(index).players.removeAll(msg.players);
+      paneJoinGame.setChoice(index + 1, gameChoice(index));
+    }
+    else if (msg.type == LobbyDeltaMsg.DeltaType.GameRemoved) {
+      games.remove(index);
+      paneJoinGame.removeChoice(index + 1);
+      for (i = index; i < games.size(); i++) {
+        paneJoinGame.setChoice(i + 1, gameChoice(i)); // renumber following games
+      }
+    }
+    return true;
+  }
+
   /** check for and handle messages from server */
   private void pollServer() {
     Object msgObj = null;
-    int i, j;
+    int i;
     if (socket == null) {
       return;
     }
@@ -403,19 +470,12 @@ public class ClientApp extends JFrame implements ActionListener, MenuListener {
           // update available game sessions
           ArrayList<String> choices = new ArrayList<String>();
           games = ((GameSessionListMsg)msgObj).toGameSessionList();
+          gamesVersion = ((GameSessionListMsg)msgObj).version;
+          gamesRequested = false;
           currentGame = null;
           choices.add("Host New Game");
           for (i = 0; i < games.size(); i++) {
-            StringBuilder choice = new StringBuilder();
-            choice.append(i + 1);
-            choice.append(". ");
-            for (j = 0; j < games.get(i).players.size(); j++) {
-              choice.append(games.get(i).players.get(j));
-              if (j < games.get(i).players.size() - 1) {
-                choice.append(", ");
-              }
-            }
-            choices.add(choice.toString());
+            choices.add(gameChoice(i));
           }
           paneJoinGame.update("Select game session to join", choices);
           if (currentPanel.equals("lobby") || (currentPanel.equals("game") && !panelGame.getGameOver())) {
@@ -425,6 +485,20 @@ public class ClientApp extends JFrame implements ActionListener, MenuListener {
             panelGame.stopGame(); // receiving this message means we are no longer in game session, so stop game now
           }
         }
+        else if (msgObj instanceof LobbyDeltaMsg) {
+          // update available game sessions in place
+          LobbyDeltaMsg msg = (LobbyDeltaMsg)msgObj;
+          if (games != null && !gamesRequested && msg.version > gamesVersion) {
+            if (msg.version == gamesVersion + 1 && applyLobbyDelta(msg)) {
+              gamesVersion = msg.version;
+            }
+            else {
+              // missed a change, so ask for whole list
+              gamesRequested = true;
+              socket.write(new GameSessionListMsg());
+            }
+          }
+        }
         else if (msgObj instanceof GameSessionMsg) {
           // update current game session
           currentGame = ((GameSessionMsg)msgObj).toGameSession();
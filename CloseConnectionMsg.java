@@ -9,4 +9,5 @@ import java.io.*;
 /** networking message indicating to close connection
     (class is empty because the requested command is self-evident from the data type) */
 public class CloseConnectionMsg implements Serializable {
+  private static final long serialVersionUID = 8804315136291548092L;
 }
@@ -14,79 +14,136 @@ public class Deck implements Serializable {
   private final int CardThickness = 1; /**< how far apart (in pixels) to draw cards when the deck is squared up */
 
   private ArrayList<Card> cards; /**< ArrayList of cards in this deck (cards towards the top have higher indices) */
+  /** which cards are in this deck as a CardSet, kept in step with cards so that membership and suit checks don't scan the deck
+      (a deck never holds two cards with the same rank and suit) */
+  private long cardSet;
+  private long faceUpSet; /**< CardSet of cards in this deck that are face up (always a subset of cardSet) */
 
   /** constructor for card deck */
   public Deck() {
     cards = new ArrayList<Card>();
+    cardSet = CardSet.Empty;
+    faceUpSet = CardSet.Empty;
   }
 
   /** append a standard 52-card deck with all cards face down */
   public void initStd52CardDeck() {
-    int rank;
-    // iterate through all possible suits and ranks
-    for (Card.Suit suit : Card.Suit.values()) {
-      for (rank = Card.MinRank; rank <= Card.MaxRank; rank++) {
-        addCard(new Card(rank, suit, false));
-      }
+    // card indices are ordered by suit and then rank
+    for (int i = 0; i < CardSet.NCards; i++) {
+      addCard(Card.get(i));
     }
   }
 
-  /** randomize the order of the cards without changing which cards are in the deck */
+  /** randomize the order of the cards without changing which cards are in the deck,
+      putting them in exactly the same order as older versions of the game for the same Random
+      (they repeatedly removed a random card from the deck and appended it to a new deck, so every copy of a game
+       must do the same to deal the same cards from the seed in StartGameMsg;
+       the removals are replayed with a bit per remaining position, so this takes linear time rather than shifting the list) */
   public void shuffle(Random rand) {
-    ArrayList<Card> shuffledCards = new ArrayList<Card>();
-    while (!cards.isEmpty()) {
-      shuffledCards.add(cards.remove(rand.nextInt(cards.size())));
+    ArrayList<Card> shuffledCards = new ArrayList<Card>(cards.size());
+    long remaining = CardSet.All >>> (CardSet.NCards - cards.size()); // a deck can't hold more than 52 cards, since they are all different
+    int i, pos;
+    for (i = cards.size(); i > 0; i--) {
+      pos = CardSet.select(remaining, rand.nextInt(i));
+      remaining &= ~(1L << pos);
+      shuffledCards.add(cards.get(pos));
     }
     cards = shuffledCards;
   }
 
-  /** sort cards by suit and rank */
+  /** randomize the order of the cards in place using a Fisher-Yates shuffle
+      (faster than shuffle(Random) and works with any ShuffleRandom, but deals different cards than it for the same seed,
+       so use this for simulations rather than games that must match other clients) */
+  public void shuffle(ShuffleRandom rand) {
+    for (int i = cards.size() - 1; i > 0; i--) {
+      Collections.swap(cards, i, rand.nextInt(i + 1));
+    }
+  }
+
+  /** sort cards by suit and rank
+      (card indices are in that order, so this rebuilds the list from the card set in linear time) */
   public void sort() {
-    Card tempCard;
-    int i, j, swapCard;
-    for (i = 0; i < cards.size() - 1; i++) {
-      // find card with lowest suit/rank combination to swap with
-      swapCard = i;
-      for (j = i + 1; j < cards.size(); j++) {
-        if (cards.get(j).getSuit().ordinal() < cards.get(swapCard).getSuit().ordinal()
-            || (cards.get(j).getSuit().ordinal() == cards.get(swapCard).getSuit().ordinal()
-                && cards.get(j).getRank() < cards.get(swapCard).getRank())) {
-          swapCard = j;
-        }
-      }
-      if (i != swapCard) {
-        // swap cards
-        tempCard = cards.get(i);
-        cards.set(i, cards.get(swapCard));
-        cards.set(swapCard, tempCard);
-      }
+    long set = cardSet;
+    for (int i = 0; set != 0; i++) {
+      cards.set(i, Card.get(CardSet.lowest(set)));
+      set &= set - 1; // clear lowest bit
     }
   }
 
-  /** add specified card to the top of the deck */
+  /** remove all cards from the deck (reusing its storage) */
+  public void clear() {
+    cards.clear();
+    cardSet = CardSet.Empty;
+    faceUpSet = CardSet.Empty;
+  }
+
+  /** make this deck a copy of specified deck, including which cards are face up (reusing this deck's storage) */
+  public void copyFrom(Deck deck) {
+    cards.clear();
+    cards.addAll(deck.cards);
+    cardSet = deck.cardSet;
+    faceUpSet = deck.faceUpSet;
+  }
+
+  /** add specified card to the top of the deck, face down */
   public void addCard(Card card) {
+    addCard(card, false);
+  }
+
+  /** add specified card to the top of the deck, face up if faceUp is true */
+  public void addCard(Card card, boolean faceUp) {
     cards.add(card);
+    cardSet |= CardSet.of(card);
+    if (faceUp) {
+      faceUpSet |= CardSet.of(card);
+    }
   }
 
-  /** move card of specified index from this deck to specified deck */
+  /** move card of specified index from this deck to specified deck (the card stays face up or face down) */
   public void moveCardTo(Deck deck, int cardIndex) {
     if (cardIndex < 0 || cardIndex >= cards.size()) {
       throw new IndexOutOfBoundsException("Card index out of bounds");
     }
-    deck.addCard(cards.remove(cardIndex));
+    Card card = cards.remove(cardIndex);
+    boolean faceUp = (faceUpSet & CardSet.of(card)) != 0;
+    cardSet &= ~CardSet.of(card);
+    faceUpSet &= ~CardSet.of(card);
+    deck.addCard(card, faceUp);
+  }
+
+  /** move card of specified index from this deck to its sorted position in specified deck (the card stays face up or face down)
+      (specified deck must already be sorted by suit and rank; the position is the number of lower cards in its card set,
+       so this doesn't need to search or re-sort the deck) */
+  public void moveCardToSorted(Deck deck, int cardIndex) {
+    if (cardIndex < 0 || cardIndex >= cards.size()) {
+      throw new IndexOutOfBoundsException("Card index out of bounds");
+    }
+    Card card = cards.remove(cardIndex);
+    long cardBit = CardSet.of(card);
+    boolean faceUp = (faceUpSet & cardBit) != 0;
+    cardSet &= ~cardBit;
+    faceUpSet &= ~cardBit;
+    deck.cards.add(CardSet.size(deck.cardSet & (cardBit - 1)), card);
+    deck.cardSet |= cardBit;
+    if (faceUp) {
+      deck.faceUpSet |= cardBit;
+    }
   }
 
   /** make all cards in the deck face up */
   public void setAllFaceUp(boolean newFaceUp) {
-    for (int i = 0; i < cards.size(); i++) {
-      cards.get(i).setFaceUp(newFaceUp);
-    }
+    faceUpSet = newFaceUp ? cardSet : CardSet.Empty;
   }
 
   /** make the top card face up */
   public void setTopFaceUp(boolean newFaceUp) {
     if (!cards.isEmpty()) {
-      cards.get(cards.size() - 1).setFaceUp(newFaceUp);
+      if (newFaceUp) {
+        faceUpSet |= CardSet.of(getTopCard());
+      }
+      else {
+        faceUpSet &= ~CardSet.of(getTopCard());
+      }
     }
   }
 
@@ -95,7 +152,7 @@ public class Deck implements Serializable {
   public void draw(Component c, Graphics2D g2, Point pos, Dimension spread) {
     Point2D.Double spreadPerCard = getSpreadPerCard(spread);
     for (int i = 0; i < cards.size(); i++) {
-      cards.get(i).draw(c, g2, new Point((int)(pos.x + i * spreadPerCard.x), (int)(pos.y + i * spreadPerCard.y)));
+      cards.get(i).draw(c, g2, new Point((int)(pos.x + i * spreadPerCard.x), (int)(pos.y + i * spreadPerCard.y)), isFaceUp(i));
     }
   }
 
@@ -149,12 +206,31 @@ public class Deck implements Serializable {
   /** returns index of card in deck equal to specified card,
       or -1 if deck doesn't contain such a card */
   public final int getEqualCard(Card card) {
-    for (int i = 0; i < cards.size(); i++) {
-      if (card.equals(cards.get(i))) {
-        return i;
-      }
+    if ((cardSet & CardSet.of(card)) == 0) {
+      return -1; // the card set says the card isn't here, so don't bother scanning
     }
-    return -1;
+    return cards.indexOf(card);
+  }
+
+  /** returns index of card in deck with specified rank and suit,
+      or -1 if deck doesn't contain such a card */
+  public final int getEqualCard(int rank, Card.Suit suit) {
+    return getEqualCard(Card.get(rank, suit));
+  }
+
+  /** returns whether card at specified position of the deck is face up */
+  public final boolean isFaceUp(int cardIndex) {
+    return (faceUpSet & CardSet.of(getCard(cardIndex))) != 0;
+  }
+
+  /** returns whether deck contains a card of specified suit */
+  public final boolean hasSuit(Card.Suit suit) {
+    return CardSet.hasSuit(cardSet, suit);
+  }
+
+  /** getter for which cards are in the deck, as a CardSet */
+  public final long getCardSet() {
+    return cardSet;
   }
 
   /** returns card at the top of the deck */
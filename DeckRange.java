@@ -4,7 +4,7 @@
 // The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
 // THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
-/** describes range of cards in a deck */
+/** describes range of cards in a deck or CardSet */
 public class DeckRange {
   public int[] low; /**< lowest rank of cards in deck per suit */
   public int[] lowIndex; /**< index of card with lowest rank in deck per suit */
@@ -13,28 +13,33 @@ public class DeckRange {
 
   /** constructor that calculates range of deck */
   public DeckRange(Deck deck) {
+    this(deck.getCardSet());
+    int i;
+    // the card set only says which cards are in the deck, so look up where the lowest and highest cards are
+    for (Card.Suit suit : Card.Suit.values()) {
+      i = suit.ordinal();
+      if (high[i] > 0) {
+        lowIndex[i] = deck.getEqualCard(low[i], suit);
+        highIndex[i] = deck.getEqualCard(high[i], suit);
+      }
+    }
+  }
+
+  /** constructor that calculates range of a CardSet
+      (lowIndex and highIndex are all -1 since a set has no order) */
+  public DeckRange(long cards) {
     int nSuit = Card.Suit.values().length;
-    int suit, i;
+    int i;
     low = new int[nSuit];
     lowIndex = new int[nSuit];
     high = new int[nSuit];
     highIndex = new int[nSuit];
-    for (i = 0; i < nSuit; i++) {
-      low[i] = Card.MaxRank + 1;
+    for (Card.Suit suit : Card.Suit.values()) {
+      i = suit.ordinal();
+      low[i] = CardSet.lowestRank(cards, suit);
       lowIndex[i] = -1;
-      high[i] = 0;
+      high[i] = CardSet.highestRank(cards, suit);
       highIndex[i] = -1;
     }
-    for (i = 0; i < deck.size(); i++) {
-      suit = deck.getCard(i).getSuit().ordinal();
-      if (deck.getCard(i).getRank() < low[suit]) {
-        low[suit] = deck.getCard(i).getRank();
-        lowIndex[suit] = i;
-      }
-      if (deck.getCard(i).getRank() > high[suit]) {
-        high[suit] = deck.getCard(i).getRank();
-        highIndex[suit] = i;
-      }
-    }
   }
 }
@@ -0,0 +1,279 @@
+// EndgameSolver.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/** exact solver for the end of a 2-player game, once the talon is empty and every card left is in one of the two hands
+    (by then a player who counts cards knows the opponent's hand, so this searches every way the rest of the game can be played
+     and returns the card that wins the most tricks, assuming the opponent also plays perfectly)
+
+    The search is alpha-beta minimax over single cards, with hands stored as CardSets.
+    Cards in the same hand that are next to each other in rank, counting only cards still in play, always lead to the same result,
+    so only the highest card of each such sequence is searched.
+    Cards that are likely to cause cutoffs are searched first: leaders try cards the opponent can't beat first, then high cards,
+    and followers try the cheapest card that wins the trick, then their lowest cards.
+    At the start of each trick, the tricks that the leader is sure to win (see sureTricks()) bound the result without searching.
+    Results are remembered in a TranspositionTable, so positions reached by playing the same cards in a different order are only searched once,
+    and the table is kept between solves, so later solves in the same game mostly find the positions that earlier ones searched. */
+public class EndgameSolver {
+  private static final int MaxPlies = GameEngine.NDealtCards * 2; /**< most cards that can be left to play */
+  private static final int DefaultTableBits = 16; /**< log base 2 of number of buckets in transposition table if none is given (2 MB) */
+
+  private long[] hands; /**< hands of the player being solved for (index 0) and the opponent (index 1), as CardSets */
+  private Card.Suit trump; /**< trump suit */
+  private int[][] moves; /**< candidate cards at each depth of the search (allocated once so searching doesn't allocate) */
+  private TranspositionTable table; /**< results of searches, by hash of position searched */
+  private int bestTricks; /**< number of tricks from the current trick on that the last solved card wins */
+  private long nodes; /**< number of positions visited by the last solve */
+
+  /** constructor for endgame solver with its own transposition table */
+  public EndgameSolver() {
+    this(new TranspositionTable(DefaultTableBits));
+  }
+
+  /** constructor for endgame solver that stores results in specified transposition table
+      (which may be shared with other solvers, including ones running in other threads) */
+  public EndgameSolver(TranspositionTable newTable) {
+    hands = new long[2];
+    moves = new int[MaxPlies + 1][GameEngine.NDealtCards];
+    table = newTable;
+  }
+
+  /** returns index (as in Card.getIndex()) of the card that wins the most tricks for the player to move
+      hand is the player's hand and oppHand is the opponent's hand, as CardSets,
+      and leadCard is the index of the card the opponent led to the current trick, or -1 if the player to move leads */
+  public int solve(long hand, long oppHand, Card.Suit trumpSuit, int leadCard) {
+    int[] rootMoves = moves[0];
+    int nMoves, value, i;
+    int bestCard = -1;
+    int alpha = -1;
+    long hash;
+    if (hand == 0) {
+      throw new IllegalArgumentException("Hand is empty");
+    }
+    hands[0] = hand;
+    hands[1] = oppHand;
+    trump = trumpSuit;
+    nodes = 1;
+    hash = TranspositionTable.hashPosition(hands, 0, leadCard, trump, 0);
+    table.newSearch();
+    nMoves = generateMoves(0, leadCard, rootMoves);
+    for (i = 0; i < nMoves; i++) {
+      value = play(0, leadCard, rootMoves[i], alpha, Long.bitCount(hand) + 1, 1, hash);
+      if (value > alpha) {
+        alpha = value;
+        bestCard = rootMoves[i];
+      }
+    }
+    table.store(hash, alpha, TranspositionTable.Exact, Long.bitCount(hand | oppHand), bestCard);
+    bestTricks = alpha;
+    return bestCard;
+  }
+
+  /** returns number of tricks from the current trick on that the solved player wins with best play from both players,
+      with the player to move, the card led to the current trick (-1 if the player to move leads), and hash of the position as given
+      (only exact within the window (alpha, beta): a result at or below alpha is an upper bound, and at or above beta is a lower bound) */
+  private int search(int player, int leadCard, int alpha, int beta, int ply, long hash) {
+    int[] plyMoves = moves[ply];
+    int tricksLeft = Long.bitCount(hands[player]); // the player to move has a card for every trick left
+    int origAlpha = alpha;
+    int origBeta = beta;
+    int bestCard = TranspositionTable.NoMove;
+    long entry;
+    int nMoves, value, best, i, sure, bound;
+    nodes++;
+    if (tricksLeft == 0) {
+      return 0;
+    }
+    if (alpha >= tricksLeft || beta <= 0) {
+      return alpha >= tricksLeft ? tricksLeft : 0; // the result can't be inside the window
+    }
+    if (leadCard < 0) {
+      sure = sureTricks(player);
+      if (player == 0 && sure >= beta) {
+        return sure;
+      }
+      if (player == 1 && tricksLeft - sure <= alpha) {
+        return tricksLeft - sure;
+      }
+    }
+    entry = table.probe(hash);
+    if (entry != TranspositionTable.NoEntry) {
+      value = TranspositionTable.getValue(entry);
+      bound = TranspositionTable.getBound(entry);
+      if (bound == TranspositionTable.Exact || (bound == TranspositionTable.Lower && value >= beta)
+          || (bound == TranspositionTable.Upper && value <= alpha)) {
+        return value;
+      }
+      bestCard = TranspositionTable.getMove(entry);
+    }
+    nMoves = generateMoves(player, leadCard, plyMoves);
+    if (bestCard != TranspositionTable.NoMove) {
+      // search the best card from the last time this position was searched first
+      for (i = 1; i < nMoves; i++) {
+        if (plyMoves[i] == bestCard) {
+          plyMoves[i] = plyMoves[0];
+          plyMoves[0] = bestCard;
+          break;
+        }
+      }
+    }
+    best = (player == 0) ? -1 : tricksLeft + 1;
+    for (i = 0; i < nMoves; i++) {
+      value = play(player, leadCard, plyMoves[i], alpha, beta, ply + 1, hash);
+      if ((player == 0) ? value > best : value < best) {
+        best = value;
+        bestCard = plyMoves[i];
+      }
+      if (player == 0) {
+        alpha = Math.max(alpha, value);
+      }
+      else {
+        beta = Math.min(beta, value);
+      }
+      if (alpha >= beta) {
+        break;
+      }
+    }
+    bound = (best <= origAlpha) ? TranspositionTable.Upper : (best >= origBeta) ? TranspositionTable.Lower : TranspositionTable.Exact;
+    table.store(hash, best, bound, Long.bitCount(hands[0] | hands[1]), bestCard);
+    return best;
+  }
+
+  /** returns search result after specified player plays specified card,
+      given the card led to the current trick (-1 if leading) and hash of the position before playing the card */
+  private int play(int player, int leadCard, int card, int alpha, int beta, int ply, long hash) {
+    long cardBit = 1L << card;
+    int ret, winner, won;
+    hands[player] &= ~cardBit;
+    hash ^= TranspositionTable.cardKey(player, card) ^ TranspositionTable.moverKey(player);
+    if (leadCard < 0) {
+      ret = search(1 - player, card, alpha, beta, ply,
+                   hash ^ TranspositionTable.leadKey(card) ^ TranspositionTable.moverKey(1 - player));
+    }
+    else {
+      // trick is complete, and its winner leads the next trick
+      winner = beats(card, leadCard) ? player : 1 - player;
+      won = (winner == 0) ? 1 : 0;
+      ret = won + search(winner, -1, alpha - won, beta - won, ply,
+                         hash ^ TranspositionTable.leadKey(leadCard) ^ TranspositionTable.moverKey(winner));
+    }
+    hands[player] |= cardBit;
+    return ret;
+  }
+
+  /** returns number of tricks that specified player is sure to win by leading, from the start of a trick
+      (trumps higher than all the opponent's trumps win, and if there are enough of them to take all the opponent's trumps,
+       so do the rest of the player's trumps and side suit cards higher than all the opponent's cards in their suit) */
+  private int sureTricks(int leader) {
+    long mine = hands[leader];
+    long theirs = hands[1 - leader];
+    long myTrumps = mine & CardSet.suitMask(trump);
+    long theirTrumps = theirs & CardSet.suitMask(trump);
+    long suitMask, theirSuit;
+    int ret;
+    if (Long.bitCount(myTrumps & -(Long.highestOneBit(theirTrumps) << 1)) < Long.bitCount(theirTrumps)) {
+      // opponent keeps a trump, so only the trumps above all of theirs are sure
+      return Long.bitCount(myTrumps & -(Long.highestOneBit(theirTrumps) << 1));
+    }
+    ret = Long.bitCount(myTrumps);
+    for (Card.Suit suit : Card.Suit.values()) {
+      if (suit != trump) {
+        suitMask = CardSet.suitMask(suit);
+        theirSuit = theirs & suitMask;
+        if (theirSuit == 0) {
+          ret += Long.bitCount(mine & suitMask); // opponent has no cards of this suit and no trumps left to beat them with
+        }
+        else {
+          ret += Long.bitCount(mine & suitMask & -(Long.highestOneBit(theirSuit) << 1));
+        }
+      }
+    }
+    return ret;
+  }
+
+  /** returns whether specified card played to a trick beats specified card led to it */
+  private boolean beats(int card, int leadCard) {
+    Card.Suit suit = CardSet.suitOf(card);
+    Card.Suit leadSuit = CardSet.suitOf(leadCard);
+    return (suit == leadSuit && card > leadCard) || (suit == trump && leadSuit != trump);
+  }
+
+  /** fill specified array with the cards worth searching for specified player, in the order to search them,
+      and return how many there are */
+  private int generateMoves(int player, int leadCard, int[] ret) {
+    long inPlay = hands[0] | hands[1];
+    long candidates = hands[player];
+    long opp = hands[1 - player];
+    long winners, set, oppSuit;
+    int n = 0;
+    int card;
+    if (leadCard >= 0) {
+      // must follow suit if possible
+      inPlay |= 1L << leadCard; // the led card separates the cards on either side of it
+      if (CardSet.hasSuit(candidates, CardSet.suitOf(leadCard))) {
+        candidates &= CardSet.suitMask(CardSet.suitOf(leadCard));
+      }
+      // cheapest cards that win the trick first, then cheapest cards that don't
+      winners = CardSet.Empty;
+      for (set = candidates; set != 0; set &= set - 1) {
+        card = CardSet.lowest(set);
+        if (beats(card, leadCard)) {
+          winners |= 1L << card;
+        }
+      }
+      n = addMoves(winners, candidates, inPlay, ret, n, false);
+      n = addMoves(candidates & ~winners, candidates, inPlay, ret, n, false);
+    }
+    else {
+      // cards the opponent can't beat first, then highest cards
+      winners = CardSet.Empty;
+      for (Card.Suit suit : Card.Suit.values()) {
+        oppSuit = opp & CardSet.suitMask(suit);
+        if (oppSuit != 0) {
+          winners |= candidates & CardSet.suitMask(suit) & -(Long.highestOneBit(oppSuit) << 1);
+        }
+        else if (suit == trump || !CardSet.hasSuit(opp, trump)) {
+          winners |= candidates & CardSet.suitMask(suit);
+        }
+      }
+      n = addMoves(winners, candidates, inPlay, ret, n, true);
+      n = addMoves(candidates & ~winners, candidates, inPlay, ret, n, true);
+    }
+    return n;
+  }
+
+  /** add cards in specified set to specified array starting at index n, lowest first or highest first,
+      skipping cards that are equivalent to the next higher card in play because both are candidates,
+      and return new number of cards in array */
+  private int addMoves(long set, long candidates, long inPlay, int[] ret, int n, boolean highFirst) {
+    long higher;
+    int card;
+    while (set != 0) {
+      card = highFirst ? CardSet.highest(set) : CardSet.lowest(set);
+      set &= ~(1L << card);
+      // find next higher card of the same suit still in play
+      higher = inPlay & CardSet.suitMask(CardSet.suitOf(card)) & -(1L << (card + 1));
+      if ((candidates & Long.lowestOneBit(higher)) == 0) {
+        ret[n++] = card;
+      }
+    }
+    return n;
+  }
+
+  /** getter for number of tricks (from the current trick on) that the card returned by the last solve wins */
+  public final int getBestTricks() {
+    return bestTricks;
+  }
+
+  /** getter for number of positions visited by the last solve */
+  public final long getNodes() {
+    return nodes;
+  }
+
+  /** getter for transposition table (for its hit counters) */
+  public final TranspositionTable getTable() {
+    return table;
+  }
+}
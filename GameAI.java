@@ -0,0 +1,19 @@
+// GameAI.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/** AI that decides which card to play in a GameEngine
+    (implemented by HeuristicAI and SamplingAI, so GameAIPanel and benchmarks can use any of them) */
+public interface GameAI {
+  /** prepares AI to play as specified player in a new game */
+  public void newGame(GameEngine game, int player);
+
+  /** updates what the AI knows about the game without playing a card
+      (must be called after every card played, so the AI sees every trick) */
+  public void update();
+
+  /** returns index in AI's hand of card that AI wants to play (it must be the AI's turn) */
+  public int chooseCard();
+}
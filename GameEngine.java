@@ -0,0 +1,273 @@
+// GameEngine.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+
+/** implements the rules of the card game German Whist, without any user interface
+    (each client's GamePanel runs a copy of the game with this, and the server runs its own copy to check each play
+     and decide the result, so it doesn't need to trust the clients)
+
+    Every copy of a game deals the same cards because the talon is shuffled by a Random with the seed in StartGameMsg.
+    Simulations that don't need to match other copies can instead deal with a faster ShuffleRandom. */
+public class GameEngine {
+  public static final int MinPlayers = 2; /**< minimum number of allowed players
+                                               (German Whist is a 2-player game, though it can be easily modified to handle more than 2 players) */
+  public static final int MaxPlayers = 4; /**< maximum number of allowed players */
+  public static final int NDealtCards = 13; /**< number of cards dealt to each player */
+
+  private Deck talon; /**< deck containing undealt cards */
+  private Deck trick; /**< deck in which tricks are played (the last trick stays in it until the next card is played, so it can be displayed) */
+  private Deck noTrick; /**< empty deck returned by getCurrentTrick() between tricks, so that doesn't allocate a deck */
+  private ArrayList<Player> players; /**< ArrayList of currently playing players and their hand decks */
+  private Card.Suit trump; /**< suit that outranks all other suits during this game */
+  private int activePlayer; /**< ID of player who plays the next card */
+  private int prevWinner; /**< ID of winner of previous trick, who leads the next trick */
+  private int finalWinner; /**< ID of winner of the entire game */
+  private boolean finalWinnerTie; /**< whether the game was a draw */
+  private boolean gameOver; /**< whether the game has ended */
+
+  /** constructor that deals a new game between specified players, using specified random number seed
+      (deals the same cards as every other version of the game for the same seed) */
+  public GameEngine(ArrayList<String> playerNames, long seed) {
+    this(playerNames, new Random(seed), null);
+  }
+
+  /** constructor that deals a new game between specified players, shuffling with specified generator
+      (for simulations, since the deal doesn't match the one for a seed) */
+  public GameEngine(ArrayList<String> playerNames, ShuffleRandom rand) {
+    this(playerNames, null, rand);
+  }
+
+  /** constructor that shuffles the talon with whichever of seedRand and rand isn't null, then deals it */
+  private GameEngine(ArrayList<String> playerNames, Random seedRand, ShuffleRandom rand) {
+    int i;
+    // throw exception if invalid number of players playing
+    if (playerNames.size() < MinPlayers || playerNames.size() > MaxPlayers) {
+      throw new IllegalArgumentException("Number of players must be between " + MinPlayers + " and " + MaxPlayers);
+    }
+    // set up talon
+    talon = new Deck();
+    talon.initStd52CardDeck();
+    if (seedRand != null) {
+      talon.shuffle(seedRand);
+    }
+    else {
+      talon.shuffle(rand);
+    }
+    // remove cards from talon if doesn't divide evenly into number of players
+    while (talon.size() % playerNames.size() != 0) {
+      talon.moveCardTo(new Deck(), talon.size() - 1);
+    }
+    if (playerNames.size() * NDealtCards > talon.size()) {
+      throw new IllegalArgumentException("Not enough cards in talon to deal to players");
+    }
+    else if (playerNames.size() * NDealtCards == talon.size()) {
+      // last card dealt will be the last card in the talon, so determine trump suit now
+      trump = talon.getCard(0).getSuit();
+    }
+    // set up players
+    players = new ArrayList<Player>();
+    for (i = 0; i < playerNames.size(); i++) {
+      Player player = new Player(playerNames.get(i), i);
+      player.dealFrom(talon, NDealtCards); // deal cards to player
+      players.add(player); // add player to list
+    }
+    activePlayer = 0;
+    prevWinner = 0;
+    // remember trump suit (unless talon is empty, in which case trump suit was determined earlier)
+    if (talon.size() > 0) {
+      trump = talon.getTopCard().getSuit();
+    }
+    // begin a new trick
+    trick = new Deck();
+    noTrick = new Deck();
+    talon.setTopFaceUp(true);
+  }
+
+  /** constructor that copies specified game (see copyFrom()) */
+  public GameEngine(GameEngine game) {
+    int i;
+    talon = new Deck();
+    trick = new Deck();
+    noTrick = new Deck();
+    players = new ArrayList<Player>();
+    for (i = 0; i < game.players.size(); i++) {
+      players.add(new Player(game.players.get(i).getName(), i));
+    }
+    copyFrom(game);
+  }
+
+  /** make this game a copy of specified game with the same number of players
+      (for simulations, which can play the copy without changing the original; this reuses the copy's decks, so it doesn't allocate) */
+  public void copyFrom(GameEngine game) {
+    int i;
+    if (game.players.size() != players.size()) {
+      throw new IllegalArgumentException("Games must have the same number of players");
+    }
+    talon.copyFrom(game.talon);
+    trick.copyFrom(game.trick);
+    for (i = 0; i < players.size(); i++) {
+      players.get(i).copyFrom(game.players.get(i));
+    }
+    trump = game.trump;
+    activePlayer = game.activePlayer;
+    prevWinner = game.prevWinner;
+    finalWinner = game.finalWinner;
+    finalWinnerTie = game.finalWinnerTie;
+    gameOver = game.gameOver;
+  }
+
+  /** end game in its current state, without a winner */
+  public void stopGame() {
+    gameOver = true;
+    finalWinnerTie = true;
+    for (int i = 0; i < players.size(); i++) {
+      players.get(i).stopGame();
+    }
+  }
+
+  /** returns whether the active player may play the card at specified index in their hand */
+  public boolean isValidPlay(int cardIndex) {
+    return !gameOver && cardIndex >= 0 && cardIndex < players.get(activePlayer).getHand().size()
+           && players.get(activePlayer).isValidPlay(cardIndex, getCurrentTrick());
+  }
+
+  /** play card at specified index in the active player's hand,
+      returns whether the card was played (the game doesn't change if it wasn't a valid play) */
+  public boolean play(int cardIndex) {
+    if (!isValidPlay(cardIndex)) {
+      return false;
+    }
+    if (isTrickComplete()) {
+      trick.clear(); // clear trick deck for a new trick
+    }
+    players.get(activePlayer).playTrick(cardIndex, trick);
+    activePlayer = (activePlayer + 1) % players.size();
+    if (activePlayer == prevWinner) {
+      // all players played a card, evaluate the trick
+      evaluateTrick();
+    }
+    return true;
+  }
+
+  /** decide the winner of current trick,
+      then either deal cards for a new trick or declare the game winner */
+  private void evaluateTrick() {
+    int i;
+    // decide who won the trick
+    int winner = 0;
+    for (i = 1; i < players.size(); i++) {
+      if ((trick.getCard(i).getSuit() == trick.getCard(winner).getSuit() && trick.getCard(i).getRank() > trick.getCard(winner).getRank())
+          || (trick.getCard(i).getSuit() == trump && trick.getCard(winner).getSuit() != trump)) {
+        winner = i;
+      }
+    }
+    winner = (prevWinner + winner) % players.size();
+    players.get(winner).winTrick();
+    prevWinner = winner;
+    activePlayer = winner;
+    // winner draws the top card of the talon, then everyone else draws one
+    if (talon.size() > 0) {
+      players.get(winner).dealFrom(talon, 1);
+      for (i = 0; i < players.size(); i++) {
+        if (i != winner) {
+          if (talon.size() == 0) {
+            break;
+          }
+          players.get(i).dealFrom(talon, 1);
+        }
+      }
+    }
+    talon.setTopFaceUp(true);
+    // handle whether game has ended
+    evaluateGame();
+  }
+
+  /** check if game has ended, and if so declare the winner */
+  private void evaluateGame() {
+    int i;
+    // check if game has ended
+    for (i = 0; i < players.size(); i++) {
+      if (!players.get(i).handIsEmpty()) {
+        return;
+      }
+    }
+    // game has ended, declare the winner
+    finalWinner = 0;
+    finalWinnerTie = false;
+    for (i = 1; i < players.size(); i++) {
+      if (players.get(i).getScore() > players.get(finalWinner).getScore()) {
+        finalWinner = i;
+        finalWinnerTie = false;
+      }
+      else if (players.get(i).getScore() == players.get(finalWinner).getScore()) {
+        finalWinnerTie = true;
+      }
+    }
+    gameOver = true;
+  }
+
+  /** returns whether every player has played a card for the trick in the trick deck (so the next card starts a new trick) */
+  public final boolean isTrickComplete() {
+    return trick.size() == players.size();
+  }
+
+  /** returns deck containing cards played so far in the trick that is in progress (which is empty if the last trick is complete)
+      (the returned deck must not be changed) */
+  public final Deck getCurrentTrick() {
+    return isTrickComplete() ? noTrick : trick;
+  }
+
+  /** getter for talon deck */
+  public final Deck getTalon() {
+    return talon;
+  }
+
+  /** getter for trick deck (which still contains the last trick if it is complete) */
+  public final Deck getTrick() {
+    return trick;
+  }
+
+  /** returns number of players in the game */
+  public final int getNPlayers() {
+    return players.size();
+  }
+
+  /** returns player with specified ID */
+  public final Player getPlayer(int id) {
+    return players.get(id);
+  }
+
+  /** getter for trump suit */
+  public final Card.Suit getTrump() {
+    return trump;
+  }
+
+  /** getter for ID of player who plays the next card */
+  public final int getActivePlayer() {
+    return activePlayer;
+  }
+
+  /** getter for ID of player who won the previous trick (and leads the next one) */
+  public final int getPrevWinner() {
+    return prevWinner;
+  }
+
+  /** getter for whether the game has ended */
+  public final boolean getGameOver() {
+    return gameOver;
+  }
+
+  /** getter for ID of game winner (only meaningful if the game ended without a tie) */
+  public final int getFinalWinner() {
+    return finalWinner;
+  }
+
+  /** getter for whether the game was a draw */
+  public final boolean getFinalWinnerTie() {
+    return finalWinnerTie;
+  }
+}
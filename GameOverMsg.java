@@ -8,6 +8,8 @@ import java.io.*;
 
 /** networking message sent when game has ended */
 public class GameOverMsg implements Serializable {
+  private static final long serialVersionUID = -4033823625259076110L;
+
   boolean complete; /**< whether game was played to completion */
   boolean tie; /**< whether the game was a draw */
   int winner; /**< ID of game winner */
@@ -8,6 +8,8 @@ import java.io.*;
 
 /** networking message to play a card */
 public class GamePlayMsg implements Serializable {
+  private static final long serialVersionUID = 8502137204291248467L;
+
   int card; /**< index of card in hand that was played */
 
   /** constructor for game play message */
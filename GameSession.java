@@ -9,6 +9,10 @@ import java.util.*;
 
 /** description of a current game session */
 public class GameSession implements Serializable {
+  private static final long serialVersionUID = -3217161704076959458L;
+
+  /** number that identifies the game in LobbyDeltaMsg messages (assigned by the server) */
+  public int id;
   /** list of names of players that have joined the game */
   public ArrayList<String> players;
   /** whether the game has started
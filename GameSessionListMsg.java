@@ -7,15 +7,23 @@
 import java.io.*;
 import java.util.*;
 
-/** networking message listing all game sessions */
+/** networking message listing all game sessions
+    (a client sends this message with a null list to ask for the whole list again) */
 public class GameSessionListMsg implements Serializable {
+  private static final long serialVersionUID = 7890688753185091488L;
+
   public ArrayList<GameSessionMsg> games; /**< list of all (available) game sessions */
+  public int version; /**< version of available games list, which LobbyDeltaMsg versions follow on from */
+  public int[] gameIds; /**< ID of each game in list (null for clients that don't support LobbyDeltaMsg) */
 
   /** returns GameSession list that is equivalent to GameSessionMsg list contained in message */
   public ArrayList<GameSession> toGameSessionList() {
     ArrayList<GameSession> ret = new ArrayList<GameSession>();
     for (int i = 0; i < games.size(); i++) {
       ret.add(games.get(i).toGameSession());
+      if (gameIds != null) {
+        ret.get(i).id = gameIds[i];
+      }
     }
     return ret;
   }
@@ -10,9 +10,12 @@ import java.util.*;
 /** networking message describing current game session
     (separate from GameSession class for a strange networking reason) */
 public class GameSessionMsg implements Serializable {
+  private static final long serialVersionUID = 1633386681052592456L;
+
   /** list of names of players that have joined the game
-      (strangely if I write an ArrayList<String> then only the first element is received over the network,
-       but writing a char[] works) */
+      (this is a list of char[] because the object stream used to never be reset, so an ArrayList<String> that was written again
+       arrived as a reference to its old contents; ObjectStreamCodec now fixes that, but the field type can't change without
+       breaking object stream clients) */
   public ArrayList<char[]> players;
   /** whether the game has started
       (alternately, whether a client is joining as opposed to leaving the game) */
@@ -0,0 +1,423 @@
+// HeapPlayerStore.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/** player store that keeps every player in memory, and saves them as a snapshot file plus a PlayerJournal of changes since the snapshot
+
+    The snapshot is rewritten from a copy of the players every PlayerJournal.CheckpointInterval changes.
+    It remembers the last journal sequence number it includes, so records that were already included are skipped
+    if the server stopped before the journal was emptied.
+
+    When loading, the journal is read first and its records are kept aside by player name.
+    Then a loader thread streams players from the snapshot in chunks, which the server thread adds to the store
+    along with the journal records for those players, so the server can sign in players who are loaded while the rest load. */
+public class HeapPlayerStore implements PlayerStore, PlayerJournal.Target {
+  public static final int LoadChunkSize = 4096; /**< number of players that the loader thread reads before handing them to the server thread */
+  private static final int SnapshotMagic = 0x47575044; /**< first int of snapshot file ("GWPD") */
+  private static final int SnapshotVersion = 1; /**< version of snapshot file format */
+
+  // types of journal records kept aside while loading
+  private static final int ChangeCreate = 1;
+  private static final int ChangePassword = 2;
+  private static final int ChangeWin = 3;
+  private static final int ChangeLoss = 4;
+  private static final int ChangeDelete = 5;
+
+  private final String snapshotPath; /**< file path of snapshot (null if changes aren't saved) */
+  private LinkedHashMap<String, PlayerData> players; /**< all players, indexed by player name (in the order the players were created) */
+  private PlayerJournal journal; /**< journal of changes since the snapshot */
+  private boolean loaded; /**< whether every player has been added to the store */
+  private boolean snapshotsEnabled; /**< whether snapshot may be rewritten (false if it couldn't be read completely) */
+  private LinkedHashMap<String, ArrayList<Change>> backlog; /**< journal records of players that haven't been loaded from the snapshot yet, by player name */
+  private DataInputStream snapshotIn; /**< stream that the loader thread reads the snapshot from (null if no snapshot or if the snapshot is a serialized PlayerStatsMsg) */
+  private CRC32 snapshotCrc; /**< checksum of snapshot bytes read so far */
+  private int snapshotPlayers; /**< number of players in snapshot */
+  private boolean legacySnapshot; /**< whether the snapshot is a serialized PlayerStatsMsg, which is how player data was saved originally */
+  private Executor serverThread; /**< runs loaded chunks on the server thread (null to load on the thread calling load()) */
+  private Runnable onLoaded; /**< run on the server thread after every player is loaded (may be null) */
+
+  /** constructor for player store using specified files
+      (if paths are null, changes are not saved, which benchmarks use) */
+  public HeapPlayerStore(String newSnapshotPath, String journalPath) {
+    snapshotPath = newSnapshotPath;
+    players = new LinkedHashMap<String, PlayerData>();
+    journal = new PlayerJournal(journalPath);
+    backlog = new LinkedHashMap<String, ArrayList<Change>>();
+  }
+
+  /** read snapshot header and journal, then start loading players from the snapshot
+      (must be called before using store; if newServerThread is null, every player is loaded before returning,
+       otherwise a loader thread hands players to newServerThread and newOnLoaded, which may be null, is run on it once they are all loaded) */
+  public void load(Executor newServerThread, Runnable newOnLoaded) throws IOException {
+    long lastSeq = 0;
+    serverThread = newServerThread;
+    onLoaded = newOnLoaded;
+    if (snapshotPath != null) {
+      lastSeq = openSnapshot();
+    }
+    journal.open(lastSeq, new Backlog());
+    if (serverThread == null) {
+      new Loader().run();
+    }
+    else {
+      Thread loader = new Thread(new Loader(), "PlayerLoader");
+      loader.setDaemon(true);
+      loader.start();
+    }
+  }
+
+  public PlayerData get(String name) {
+    return players.get(name);
+  }
+
+  public int size() {
+    return players.size();
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  public Iterator<PlayerData> iterator() {
+    return Collections.unmodifiableCollection(players.values()).iterator();
+  }
+
+  public void create(String name, String password) {
+    PlayerData player = new PlayerData(name, password, 0, 0);
+    applyCreate(journal.logCreate(player), player);
+  }
+
+  public void setPassword(String name, String password) {
+    applyPassword(journal.logPassword(name, password), name, password);
+  }
+
+  public void winGame(String name) {
+    applyWin(journal.logWin(name), name);
+  }
+
+  public void loseGame(String name) {
+    applyLoss(journal.logLoss(name), name);
+  }
+
+  public void delete(String name) {
+    applyDelete(journal.logDelete(name), name);
+  }
+
+  /** commit journal, and take a copy of all players to write as a new snapshot if the journal has gotten long
+      (a snapshot is not written until every player is loaded) */
+  public void commit(PlayerJournal.CommitListener listener) {
+    Snapshot snapshot = null;
+    if (snapshotPath != null && loaded && snapshotsEnabled && journal.isCheckpointDue()) {
+      snapshot = new Snapshot(journal.getLastSeq());
+    }
+    journal.commit(listener, snapshot);
+  }
+
+  public void close() throws IOException {
+    journal.close();
+  }
+
+  public void applyCreate(long seq, PlayerData player) {
+    players.put(player.getName(), player);
+  }
+
+  public void applyPassword(long seq, String name, String password) {
+    if (players.containsKey(name)) {
+      players.get(name).setPassword(password);
+    }
+  }
+
+  public void applyWin(long seq, String name) {
+    if (players.containsKey(name)) {
+      players.get(name).winGame();
+    }
+  }
+
+  public void applyLoss(long seq, String name) {
+    if (players.containsKey(name)) {
+      players.get(name).loseGame();
+    }
+  }
+
+  public void applyDelete(long seq, String name) {
+    players.remove(name);
+  }
+
+  /** open snapshot file and read its header, returning last sequence number it includes */
+  private long openSnapshot() throws IOException {
+    long lastSeq;
+    int magic;
+    snapshotCrc = new CRC32();
+    try {
+      snapshotIn = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(snapshotPath)), snapshotCrc));
+    }
+    catch (FileNotFoundException ex) {
+      return 0; // no players yet
+    }
+    magic = snapshotIn.readInt();
+    if ((magic >>> 16) == (ObjectStreamConstants.STREAM_MAGIC & 0xffff)) {
+      // player data file from before the journal existed, which is replaced at the next snapshot
+      snapshotIn.close();
+      snapshotIn = null;
+      legacySnapshot = true;
+      return 0;
+    }
+    if (magic != SnapshotMagic || snapshotIn.readInt() != SnapshotVersion) {
+      snapshotIn.close();
+      throw new StreamCorruptedException("Invalid snapshot file");
+    }
+    lastSeq = snapshotIn.readLong();
+    snapshotPlayers = snapshotIn.readInt();
+    return lastSeq;
+  }
+
+  /** read players from a file containing a serialized PlayerStatsMsg */
+  private ArrayList<PlayerData> readLegacySnapshot() throws IOException {
+    ObjectInputStream inStream = new ObjectInputStream(new FileInputStream(snapshotPath));
+    try {
+      Object inObj = inStream.readObject();
+      if (!(inObj instanceof PlayerStatsMsg)) {
+        throw new StreamCorruptedException("Invalid object in settings file");
+      }
+      return ((PlayerStatsMsg)inObj).players;
+    }
+    catch (ClassNotFoundException ex) {
+      throw new StreamCorruptedException("Invalid object in settings file");
+    }
+    finally {
+      inStream.close();
+    }
+  }
+
+  /** add specified loaded players to store along with their journal records
+      (must be run on the server thread) */
+  private void publish(ArrayList<PlayerData> chunk) {
+    ArrayList<Change> changes;
+    for (PlayerData player : chunk) {
+      players.put(player.getName(), player);
+      changes = backlog.remove(player.getName());
+      if (changes != null) {
+        for (Change change : changes) {
+          change.apply();
+        }
+      }
+    }
+  }
+
+  /** apply journal records of players that weren't in the snapshot (such as players created since the snapshot),
+      then mark store as loaded */
+  private void finishLoading() {
+    for (ArrayList<Change> changes : backlog.values()) {
+      for (Change change : changes) {
+        change.apply();
+      }
+    }
+    backlog.clear();
+    loaded = true;
+    if (onLoaded != null) {
+      onLoaded.run();
+    }
+  }
+
+  /** journal record that is kept aside until its player is loaded from the snapshot */
+  private class Change {
+    public int type; /**< type of change */
+    public long seq; /**< sequence number of journal record */
+    public String name; /**< name of player that is changed */
+    public PlayerData player; /**< created player (only used for ChangeCreate) */
+    public String password; /**< new password (only used for ChangePassword) */
+
+    /** constructor for change of specified type to specified player */
+    public Change(int newType, long newSeq, String newName) {
+      type = newType;
+      seq = newSeq;
+      name = newName;
+    }
+
+    /** apply change to store */
+    public void apply() {
+      if (type == ChangeCreate) {
+        applyCreate(seq, player);
+      }
+      else if (type == ChangePassword) {
+        applyPassword(seq, name, password);
+      }
+      else if (type == ChangeWin) {
+        applyWin(seq, name);
+      }
+      else if (type == ChangeLoss) {
+        applyLoss(seq, name);
+      }
+      else if (type == ChangeDelete) {
+        applyDelete(seq, name);
+      }
+    }
+  }
+
+  /** keeps journal records aside by player name, to apply when each player is loaded from the snapshot */
+  private class Backlog implements PlayerJournal.Target {
+    public void applyCreate(long seq, PlayerData player) {
+      Change change = add(ChangeCreate, seq, player.getName());
+      change.player = player;
+    }
+
+    public void applyPassword(long seq, String name, String password) {
+      Change change = add(ChangePassword, seq, name);
+      change.password = password;
+    }
+
+    public void applyWin(long seq, String name) {
+      add(ChangeWin, seq, name);
+    }
+
+    public void applyLoss(long seq, String name) {
+      add(ChangeLoss, seq, name);
+    }
+
+    public void applyDelete(long seq, String name) {
+      add(ChangeDelete, seq, name);
+    }
+
+    /** add change of specified type to specified player to backlog, and return it */
+    private Change add(int type, long seq, String name) {
+      Change change = new Change(type, seq, name);
+      if (!backlog.containsKey(name)) {
+        backlog.put(name, new ArrayList<Change>());
+      }
+      backlog.get(name).add(change);
+      return change;
+    }
+  }
+
+  /** adds a chunk of loaded players to the store on the server thread */
+  private class Publish implements Runnable {
+    private ArrayList<PlayerData> chunk; /**< players to add */
+    private boolean last; /**< whether this is the last chunk */
+
+    /** constructor for adding specified chunk of players */
+    public Publish(ArrayList<PlayerData> newChunk, boolean newLast) {
+      chunk = newChunk;
+      last = newLast;
+    }
+
+    /** add players to store */
+    public void run() {
+      publish(chunk);
+      if (last) {
+        finishLoading();
+      }
+    }
+  }
+
+  /** reads players from snapshot and hands them to the server thread in chunks */
+  private class Loader implements Runnable {
+    /** read every player in snapshot */
+    public void run() {
+      ArrayList<PlayerData> chunk = new ArrayList<PlayerData>();
+      ArrayList<PlayerData> legacyPlayers;
+      int i;
+      snapshotsEnabled = true;
+      try {
+        if (legacySnapshot) {
+          legacyPlayers = readLegacySnapshot();
+          for (i = 0; i < legacyPlayers.size(); i += LoadChunkSize) {
+            hand(new ArrayList<PlayerData>(legacyPlayers.subList(i, Math.min(i + LoadChunkSize, legacyPlayers.size()))), false);
+          }
+        }
+        else if (snapshotIn != null) {
+          for (i = 0; i < snapshotPlayers; i++) {
+            chunk.add(new PlayerData(snapshotIn.readUTF(), snapshotIn.readUTF(), snapshotIn.readInt(), snapshotIn.readInt()));
+            if (chunk.size() == LoadChunkSize) {
+              hand(chunk, false);
+              chunk = new ArrayList<PlayerData>();
+            }
+          }
+          long expectedCrc = snapshotCrc.getValue();
+          if (snapshotIn.readLong() != expectedCrc) {
+            throw new StreamCorruptedException("Snapshot checksum mismatch");
+          }
+        }
+      }
+      catch (Exception ex) {
+        // keep the players that were read, but don't overwrite the snapshot with them
+        System.out.println("Error loading player data from file: " + ex.getMessage());
+        System.out.println("Changes to players will be saved to the journal, but the snapshot will not be rewritten.");
+        snapshotsEnabled = false;
+      }
+      finally {
+        if (snapshotIn != null) {
+          try {
+            snapshotIn.close();
+          }
+          catch (IOException ex) {
+            // ignore exceptions
+          }
+        }
+      }
+      hand(chunk, true);
+    }
+
+    /** hand specified chunk of players to server thread */
+    private void hand(ArrayList<PlayerData> chunk, boolean last) {
+      Publish publish = new Publish(chunk, last);
+      if (serverThread != null) {
+        serverThread.execute(publish);
+      }
+      else {
+        publish.run();
+      }
+    }
+  }
+
+  /** copy of all players, which the journal's writer thread writes to a new snapshot file */
+  private class Snapshot implements PlayerJournal.Checkpoint {
+    private ArrayList<PlayerData> copy; /**< copy of players taken when snapshot was committed */
+    private long lastSeq; /**< sequence number of last journal record included in snapshot */
+
+    /** constructor that copies current players */
+    public Snapshot(long newLastSeq) {
+      lastSeq = newLastSeq;
+      copy = new ArrayList<PlayerData>(players.size());
+      for (PlayerData player : players.values()) {
+        copy.add(new PlayerData(player.getName(), player.getPassword(), player.getGamesWon(), player.getGamesPlayed()));
+      }
+    }
+
+    /** write copied players to snapshot file
+        (snapshot is written to a temporary file first so that a crash never leaves a partial snapshot) */
+    public void write() throws IOException {
+      Path tempPath = Paths.get(snapshotPath + ".tmp");
+      CRC32 crc = new CRC32();
+      DataOutputStream out;
+      FileOutputStream fileOut = new FileOutputStream(tempPath.toFile());
+      try {
+        out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc));
+        out.writeInt(SnapshotMagic);
+        out.writeInt(SnapshotVersion);
+        out.writeLong(lastSeq);
+        out.writeInt(copy.size());
+        for (PlayerData player : copy) {
+          out.writeUTF(player.getName());
+          out.writeUTF(player.getPassword());
+          out.writeInt(player.getGamesWon());
+          out.writeInt(player.getGamesPlayed());
+        }
+        out.writeLong(crc.getValue());
+        out.flush();
+        fileOut.getChannel().force(true);
+      }
+      finally {
+        fileOut.close();
+      }
+      Files.move(tempPath, Paths.get(snapshotPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+// HeuristicAI.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+
+/** AI that decides which card to play by weighting each card in its hand,
+    based on which cards it has seen played and whether the top talon card is worth winning
+    (it only reads the GameEngine it is given and has no user interface, so it can also run in benchmarks)
+
+    Once the talon is empty in a 2-player game, the cards the AI hasn't seen are exactly the opponent's hand,
+    so it plays the card that EndgameSolver finds wins the most tricks instead. */
+public class HeuristicAI implements GameAI {
+  private Random rand; /**< random number generator used to pick a card according to the weights */
+  private boolean verbose; /**< whether to print the AI's reasoning to System.out */
+  private GameEngine game; /**< game the AI is playing */
+  private int player; /**< player ID of the AI in the game */
+  private Deck hand; /**< reference to AI's hand deck */
+  private long played; /**< CardSet of cards that have been played */
+  private long notPlayed; /**< CardSet of cards that haven't been played (excluding own cards) */
+  private DeckRange handRange; /**< range of rank of cards in our hand per suit */
+  private DeckRange playedRange; /**< range of rank of cards played per suit */
+  private DeckRange notPlayedRange; /**< range of rank of cards not played per suit */
+  private ArrayList<Integer> handWeight; /**< eventually determines odds of playing of each card in hand */
+  private EndgameSolver solver; /**< finds best card once the talon is empty */
+
+  /** constructor for AI that picks cards using specified random number generator */
+  public HeuristicAI(Random newRand, boolean newVerbose) {
+    rand = newRand;
+    verbose = newVerbose;
+    solver = new EndgameSolver();
+  }
+
+  /** prepares AI to play as specified player in a new game */
+  public void newGame(GameEngine newGame, int newPlayer) {
+    game = newGame;
+    player = newPlayer;
+    played = CardSet.Empty;
+    notPlayed = CardSet.All;
+  }
+
+  /** updates statistics AI stores without playing a card
+      (must be called after every card played, so the AI sees every trick) */
+  public void update() {
+    Deck trick = game.getTrick(); // includes the last card of a complete trick, which getCurrentTrick() leaves out
+    hand = game.getPlayer(player).getHand();
+    // remove cards we own from not played set
+    notPlayed &= ~hand.getCardSet();
+    // move cards in trick deck from not played to played set
+    played |= trick.getCardSet() & notPlayed;
+    notPlayed &= ~trick.getCardSet();
+  }
+
+  /** returns index in AI's hand of card that AI wants to play (it must be the AI's turn) */
+  public int chooseCard() {
+    int totalWeight; // total weight of all cards in hand
+    int i, j;
+    hand = game.getPlayer(player).getHand();
+    if (game.getTalon().size() == 0 && game.getNPlayers() == 2) {
+      i = solveEndgame();
+      if (i >= 0) {
+        return i;
+      }
+    }
+    // find worst and best cards unplayed, played, and in our hand
+    handRange = new DeckRange(hand);
+    playedRange = new DeckRange(played);
+    notPlayedRange = new DeckRange(notPlayed);
+    // reset weights
+    handWeight = new ArrayList<Integer>();
+    for (i = 0; i < hand.size(); i++) {
+      if (game.isValidPlay(i)) {
+        handWeight.add(1);
+      }
+      else {
+        handWeight.add(0);
+      }
+    }
+    // print status
+    if (verbose) {
+      System.out.println();
+      System.out.println("cards played:");
+      System.out.println(CardSet.getString(played));
+      System.out.println("cards not played:");
+      System.out.println(CardSet.getString(notPlayed));
+      for (Card.Suit currSuit : Card.Suit.values()) {
+        System.out.println("hand " + currSuit.toString() + " rank range: "
+                           + handRange.low[currSuit.ordinal()] + "-" + handRange.high[currSuit.ordinal()]);
+        System.out.println("played " + currSuit.toString() + " rank range: "
+                           + playedRange.low[currSuit.ordinal()] + "-" + playedRange.high[currSuit.ordinal()]);
+        System.out.println("unplayed " + currSuit.toString() + " rank range: "
+                           + notPlayedRange.low[currSuit.ordinal()] + "-" + notPlayedRange.high[currSuit.ordinal()]);
+      }
+    }
+    // decide whether to try to win or lose trick
+    if (game.getTalon().size() == 0) {
+      log("no cards in talon, so try to win trick");
+      tryWinTrick();
+    }
+    else {
+      if (game.getTalon().getTopCard().getRank() > (Card.MaxRank - Card.MinRank) / 2 + Card.MinRank) {
+        log("top talon card has good rank, so try to win trick");
+        tryWinTrick();
+      }
+      else {
+        log("top talon card has bad rank, so try to lose trick");
+        tryLoseTrick();
+      }
+    }
+    // decide card to play based on weights
+    totalWeight = 0;
+    log("hand weight distribution:");
+    for (i = 0; i < hand.size(); i++) {
+      totalWeight += handWeight.get(i);
+      if (verbose) {
+        System.out.print(handWeight.get(i) + " ");
+      }
+    }
+    log("");
+    j = (int)Math.floor(rand.nextDouble() * (totalWeight + 1));
+    for (i = 0; i < hand.size(); i++) {
+      totalWeight -= handWeight.get(i);
+      if (totalWeight <= j && handWeight.get(i) > 0) {
+        return i;
+      }
+    }
+    throw new RuntimeException("AI's random number didn't fall within weights; this shouldn't happen");
+  }
+
+  /** returns index in AI's hand of the card EndgameSolver finds wins the most tricks,
+      or -1 if the cards the AI hasn't seen don't add up to the opponent's hand (which means the AI missed an update) */
+  private int solveEndgame() {
+    Deck trick = game.getCurrentTrick();
+    int leadCard = (trick.size() == 0) ? -1 : trick.getCard(0).getIndex();
+    int card;
+    if (CardSet.size(notPlayed) != hand.size() - trick.size()) {
+      log("cards not played don't match opponent's hand, so can't solve endgame");
+      return -1;
+    }
+    card = solver.solve(hand.getCardSet(), notPlayed, game.getTrump(), leadCard);
+    log("no cards in talon, so play " + Card.get(card).getString() + ", which wins " + solver.getBestTricks()
+        + " more tricks with best play (searched " + solver.getNodes() + " positions)");
+    return hand.getEqualCard(Card.get(card));
+  }
+
+  /** assign weights to try to win trick */
+  private void tryWinTrick() {
+    Deck trick = game.getCurrentTrick();
+    int thisRank, thisSuit;
+    for (int i = 0; i < hand.size(); i++) {
+      // make sure we follow suit if we're not playing first
+      if (trick.size() == 0 || hand.getCard(i).getSuit() == trick.getCard(0).getSuit()) {
+        thisRank = hand.getCard(i).getRank();
+        thisSuit = hand.getCard(i).getSuit().ordinal();
+        if (thisRank > notPlayedRange.high[thisSuit]) {
+          handWeight.set(i, handWeight.get(i) + 500); // give very large weight if no other player has card ranked this high
+        }
+        if (thisRank > playedRange.high[thisSuit]) {
+          handWeight.set(i, handWeight.get(i) + 50); // give large weight if other players haven't played a card ranked this high
+        }
+        handWeight.set(i, handWeight.get(i) + thisRank); // value larger ranks
+      }
+      else if (handWeight.get(i) > 0 && hand.getCard(i).getSuit() == game.getTrump()) {
+        // give large weight if we can't follow suit and this is a trump card
+        handWeight.set(i, handWeight.get(i) + 50);
+      }
+    }
+  }
+
+  /** assign weights to try to lose trick */
+  private void tryLoseTrick() {
+    Deck trick = game.getCurrentTrick();
+    int thisRank, thisSuit;
+    for (int i = 0; i < hand.size(); i++) {
+      // make sure we follow suit if we're not playing first
+      if (trick.size() == 0 || hand.getCard(i).getSuit() == trick.getCard(0).getSuit()) {
+        thisRank = hand.getCard(i).getRank();
+        thisSuit = hand.getCard(i).getSuit().ordinal();
+        if (thisRank < notPlayedRange.low[thisSuit]) {
+          handWeight.set(i, handWeight.get(i) + 500); // give very large weight if no other player has card ranked this low
+        }
+        if (thisRank < playedRange.low[thisSuit]) {
+          handWeight.set(i, handWeight.get(i) + 50); // give large weight if other players haven't played a card ranked this low
+        }
+        handWeight.set(i, handWeight.get(i) + Card.MaxRank - thisRank); // value lower ranks
+      }
+    }
+  }
+
+  // commented out dumb AI below
+  /*public void newGame(GameEngine newGame, int newPlayer) {
+    game = newGame;
+    player = newPlayer;
+  }
+
+  public void update() {
+    // no statistics needed for dumb AI
+  }
+
+  public int chooseCard() {
+    int ret;
+    do {
+      ret = (int)Math.floor(Math.random() * hand.size());
+    } while (!game.isValidPlay(ret));
+    return ret;
+  }*/
+
+  /** print specified message if the AI is verbose */
+  private void log(String msg) {
+    if (verbose) {
+      System.out.println(msg);
+    }
+  }
+}
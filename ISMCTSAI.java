@@ -0,0 +1,264 @@
+// ISMCTSAI.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+
+/** AI for 2-player games that decides which card to play while the talon still has cards
+    with Information Set Monte Carlo Tree Search (single observer):
+    each iteration deals the cards the AI can't see at random, consistently with what it has seen (see CardTracker),
+    into a copy of the GameEngine, then descends a single tree of plays shared by every deal.
+    At each node only the cards that are valid in this iteration's deal are considered, and the one with the best UCT score is picked
+    (UCT counts how many times a card could have been picked rather than how many times its parent was visited, since cards aren't always valid).
+    When the deal reaches a node with a valid card that hasn't been tried, that card is added to the tree,
+    and the rest of the game is played out by playing random valid cards with the GameEngine's rules.
+    The winner of the play-out is credited in every node on the way down.
+
+    The search is anytime: it stops when it runs out of its time budget per move (or reaches its maximum number of iterations),
+    and plays the card that was tried the most.
+
+    Once the talon is empty, and in games with more than 2 players, it plays the same cards as HeuristicAI
+    (which solves the endgame exactly). */
+public class ISMCTSAI implements GameAI {
+  public static final long DefaultTimeBudget = 1000; /**< milliseconds to search per move if none is given */
+  private static final double Exploration = 0.7; /**< UCT exploration constant (rewards are between 0 and 1) */
+
+  private ShuffleRandom rand; /**< random number generator used to deal cards and play them out */
+  private long timeBudget; /**< nanoseconds to search per move */
+  private int maxIterations; /**< most iterations to search per move */
+  private boolean verbose; /**< whether to print the AI's reasoning to System.out */
+  private HeuristicAI fallback; /**< plays when tree search doesn't apply */
+  private GameEngine game; /**< game the AI is playing */
+  private int player; /**< player ID of the AI in the game */
+  private CardTracker tracker; /**< what the AI knows about the cards it can't see */
+  private GameEngine sim; /**< copy of the game with a random deal of the cards the AI can't see, which each iteration plays */
+  private int[] talonOrder; /**< order in which talon cards are drawn in the current deal (the face-up card first) */
+  private int iterations; /**< number of iterations searched by the last decision */
+  private int treeSize; /**< number of nodes in the tree built by the last decision */
+  private long nodes; /**< number of cards played in simulations by the last decision */
+  private long searchTime; /**< nanoseconds that the last decision searched */
+
+  /** constructor for AI that searches for the default time per move, using specified random number generator */
+  public ISMCTSAI(ShuffleRandom newRand, boolean newVerbose) {
+    this(newRand, DefaultTimeBudget, Integer.MAX_VALUE, newVerbose);
+  }
+
+  /** constructor for AI that searches for specified number of milliseconds per move, or specified number of iterations if that comes first */
+  public ISMCTSAI(ShuffleRandom newRand, long newTimeBudget, int newMaxIterations, boolean newVerbose) {
+    if (newTimeBudget < 1 || newMaxIterations < 1) {
+      throw new IllegalArgumentException("Time budget and maximum iterations must both be positive");
+    }
+    rand = newRand;
+    timeBudget = Math.min(newTimeBudget, Long.MAX_VALUE / 1000000) * 1000000;
+    maxIterations = newMaxIterations;
+    verbose = newVerbose;
+    fallback = new HeuristicAI(new Random(newRand.nextInt(Integer.MAX_VALUE)), newVerbose); // seeded by rand, so games replay exactly
+    tracker = new CardTracker();
+    talonOrder = new int[CardSet.NCards];
+  }
+
+  public void newGame(GameEngine newGame, int newPlayer) {
+    game = newGame;
+    player = newPlayer;
+    fallback.newGame(newGame, newPlayer);
+    tracker.newGame(newGame, newPlayer);
+    sim = new GameEngine(newGame);
+  }
+
+  public void update() {
+    fallback.update();
+    tracker.update();
+  }
+
+  public int chooseCard() {
+    Deck hand = game.getPlayer(player).getHand();
+    Node root = new Node(null, -1, 1 - player);
+    Node best = null;
+    long startTime, deadline;
+    if (game.getNPlayers() != 2 || game.getTalon().size() == 0) {
+      return fallback.chooseCard();
+    }
+    if (!tracker.isConsistent()) {
+      log("cards not seen don't match opponent's hand and talon, so can't search");
+      return fallback.chooseCard();
+    }
+    startTime = System.nanoTime();
+    deadline = startTime + timeBudget;
+    iterations = 0;
+    treeSize = 1;
+    nodes = 0;
+    do {
+      iterate(root);
+      iterations++;
+    } while (iterations < maxIterations && System.nanoTime() - deadline < 0);
+    searchTime = System.nanoTime() - startTime;
+    // play the card that was tried the most
+    for (Node child : root.children) {
+      if (best == null || child.visits > best.visits) {
+        best = child;
+      }
+      log(Card.get(child.card).getString() + " won " + child.reward + " of " + child.visits + " visits");
+    }
+    log("play " + Card.get(best.card).getString() + " (searched " + iterations + " iterations in " + searchTime / 1000000 + " ms, "
+        + (long)getNodesPerSecond() + " nodes/s, tree size " + treeSize + ")");
+    return hand.getEqualCard(Card.get(best.card));
+  }
+
+  /** run one iteration of the search from specified root: deal, select, expand, play out, and credit the winner */
+  private void iterate(Node root) {
+    Node node = root;
+    long valid = CardSet.Empty;
+    long untried = CardSet.Empty;
+    int card;
+    deal();
+    // select: descend while every valid card has been tried
+    while (!sim.getGameOver()) {
+      valid = validCards();
+      untried = valid & ~node.childCards;
+      if (untried != 0) {
+        break;
+      }
+      node = select(node, valid);
+      play(node.card);
+    }
+    // expand: add a random untried card to the tree
+    if (!sim.getGameOver()) {
+      markAvailable(node, valid);
+      card = CardSet.select(untried, rand.nextInt(CardSet.size(untried)));
+      node = new Node(node, card, sim.getActivePlayer());
+      node.available = 1;
+      treeSize++;
+      play(card);
+    }
+    // play out the rest of the game at random
+    while (!sim.getGameOver()) {
+      valid = validCards();
+      play(CardSet.select(valid, rand.nextInt(CardSet.size(valid))));
+    }
+    // credit the winner in every node on the way down
+    for (; node != null; node = node.parent) {
+      node.visits++;
+      if (sim.getFinalWinnerTie()) {
+        node.reward += 0.5;
+      }
+      else if (sim.getFinalWinner() == node.player) {
+        node.reward += 1;
+      }
+    }
+  }
+
+  /** copy the game into sim and deal the cards the AI can't see at random, consistently with what the AI has seen */
+  private void deal() {
+    Deck oppHand, talon;
+    long oppCards;
+    int i;
+    sim.copyFrom(game);
+    oppCards = tracker.dealOpponent(rand, talonOrder);
+    oppHand = sim.getPlayer(1 - player).getHand();
+    oppHand.clear();
+    for (; oppCards != 0; oppCards &= oppCards - 1) {
+      oppHand.addCard(Card.get(CardSet.lowest(oppCards)));
+    }
+    talon = sim.getTalon();
+    talon.clear();
+    for (i = tracker.getTalonSize() - 1; i >= 0; i--) {
+      talon.addCard(Card.get(talonOrder[i]), i == 0); // the face-up card goes on top
+    }
+  }
+
+  /** returns child of specified node with the best UCT score among the children whose cards are in specified CardSet,
+      and counts those children as available */
+  private Node select(Node node, long valid) {
+    Node ret = null;
+    double score;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    markAvailable(node, valid);
+    for (Node child : node.children) {
+      if ((valid & (1L << child.card)) != 0) {
+        score = child.reward / child.visits + Exploration * Math.sqrt(Math.log(child.available) / child.visits);
+        if (score > bestScore) {
+          bestScore = score;
+          ret = child;
+        }
+      }
+    }
+    return ret;
+  }
+
+  /** count the children of specified node whose cards are in specified CardSet as available */
+  private void markAvailable(Node node, long valid) {
+    for (Node child : node.children) {
+      if ((valid & (1L << child.card)) != 0) {
+        child.available++;
+      }
+    }
+  }
+
+  /** returns CardSet of cards that sim's active player may play */
+  private long validCards() {
+    long hand = sim.getPlayer(sim.getActivePlayer()).getHand().getCardSet();
+    Deck trick = sim.getCurrentTrick();
+    Card.Suit leadSuit;
+    if (trick.size() > 0) {
+      leadSuit = trick.getCard(0).getSuit();
+      if (CardSet.hasSuit(hand, leadSuit)) {
+        return hand & CardSet.suitMask(leadSuit); // must follow suit if possible
+      }
+    }
+    return hand;
+  }
+
+  /** play specified card from the hand of sim's active player */
+  private void play(int card) {
+    sim.play(sim.getPlayer(sim.getActivePlayer()).getHand().getEqualCard(Card.get(card)));
+    nodes++;
+  }
+
+  /** getter for number of iterations searched by the last decision */
+  public final int getIterations() {
+    return iterations;
+  }
+
+  /** getter for number of nodes in the tree built by the last decision */
+  public final int getTreeSize() {
+    return treeSize;
+  }
+
+  /** returns number of cards played in simulations per second by the last decision */
+  public final double getNodesPerSecond() {
+    return (searchTime == 0) ? 0 : nodes * 1e9 / searchTime;
+  }
+
+  /** print specified message if the AI is verbose */
+  private void log(String msg) {
+    if (verbose) {
+      System.out.println(msg);
+    }
+  }
+
+  /** node of the search tree, reached by playing the cards of its ancestors then its own card */
+  private static class Node {
+    public Node parent; /**< node whose card was played before this one (null for the root) */
+    public ArrayList<Node> children; /**< nodes for cards that have been tried after this one */
+    public long childCards; /**< CardSet of the children's cards */
+    public int card; /**< index of card played to reach this node (-1 for the root) */
+    public int player; /**< player who played the card */
+    public int visits; /**< number of iterations that went through this node */
+    public int available; /**< number of iterations in which this node's card was valid to play when its parent was reached */
+    public double reward; /**< number of those iterations won by the player who played the card (ties count as half) */
+
+    /** constructor for node that plays specified card after specified parent node (which it is added to) */
+    public Node(Node newParent, int newCard, int newPlayer) {
+      parent = newParent;
+      children = new ArrayList<Node>();
+      card = newCard;
+      player = newPlayer;
+      if (parent != null) {
+        parent.children.add(this);
+        parent.childCards |= 1L << card;
+      }
+    }
+  }
+}
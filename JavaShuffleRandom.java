@@ -0,0 +1,26 @@
+// JavaShuffleRandom.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+
+/** ShuffleRandom that draws from a java.util.Random */
+public class JavaShuffleRandom implements ShuffleRandom {
+  private Random rand; /**< generator to draw from */
+
+  /** constructor that draws from specified generator */
+  public JavaShuffleRandom(Random newRand) {
+    rand = newRand;
+  }
+
+  /** constructor that draws from a new Random with specified seed */
+  public JavaShuffleRandom(long seed) {
+    this(new Random(seed));
+  }
+
+  public int nextInt(int bound) {
+    return rand.nextInt(bound);
+  }
+}
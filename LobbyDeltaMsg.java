@@ -0,0 +1,28 @@
+// LobbyDeltaMsg.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.util.*;
+
+/** networking message describing a single change to the list of available game sessions
+    (only sent to clients using binary protocol version 2 or later, which keep their list up to date by applying these;
+     other clients are sent the whole GameSessionListMsg after every change) */
+public class LobbyDeltaMsg implements Serializable {
+  private static final long serialVersionUID = 2945173806213387461L;
+  public static final int MinProtocolVersion = 2; /**< first binary protocol version that supports this message */
+
+  /** kinds of changes to the available games list */
+  public enum DeltaType {
+    GameAdded, PlayerJoined, PlayerLeft, GameRemoved
+  }
+
+  public DeltaType type; /**< kind of change */
+  public int version; /**< version of available games list after this change (one more than the version it applies to) */
+  public int gameId; /**< ID of game that changed */
+  /** for GameAdded, the names of all players in the game,
+      and for PlayerJoined or PlayerLeft, the name of the player who joined or left (empty for GameRemoved) */
+  public ArrayList<String> players;
+}
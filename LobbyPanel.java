@@ -28,7 +28,7 @@ public class LobbyPanel extends JPanel implements ActionListener {
     gbc.gridy = 0;
     // instantiate and add components
     lblPlayers = new ArrayList<JLabel>();
-    for (int i = 0; i < GamePanel.MaxPlayers; i++) {
+    for (int i = 0; i < GameEngine.MaxPlayers; i++) {
       lblPlayers.add(new JLabel());
       add(lblPlayers.get(i), gbc);
       gbc.gridy++;
@@ -56,7 +56,7 @@ public class LobbyPanel extends JPanel implements ActionListener {
         lblPlayers.get(i).setText("");
       }
     }
-    btnStartGame.setEnabled(players.size() >= GamePanel.MinPlayers && players.size() <= GamePanel.MaxPlayers);
+    btnStartGame.setEnabled(players.size() >= GameEngine.MinPlayers && players.size() <= GameEngine.MaxPlayers);
   }
 
   /** pass button click events to parent action listener */
@@ -0,0 +1,468 @@
+// MappedPlayerStore.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+/** player store that keeps players in a memory-mapped file of fixed-size records, with a memory-mapped hash index by player name,
+    so that opening the store takes constant time and only the pages of players who are looked up are read from disk
+
+    Each record remembers the sequence number of the last PlayerJournal record applied to it,
+    so when the journal is replayed after a crash, changes that already reached the mapped file aren't applied twice.
+    Every PlayerJournal.CheckpointInterval changes, the records are forced to disk and the journal is emptied.
+    The index isn't forced to disk; if the store wasn't closed cleanly, the index is rebuilt from the records when it is opened.
+    Records of deleted players are not reused. */
+public class MappedPlayerStore implements PlayerStore, PlayerJournal.Target {
+  public static final int RecordSize = 256; /**< size of each player record, in bytes */
+  private static final int SegmentRecords = 1 << 16; /**< number of records in each mapped segment of the records file */
+  private static final int InitialIndexCapacity = 1 << 10; /**< initial number of slots in index */
+  private static final int Magic = 0x4757504d; /**< first int of records file ("GWPM") */
+  private static final int Version = 1; /**< version of records file format */
+
+  // offsets of fields in header, which takes up the space of the first record
+  private static final int HeaderMagic = 0;
+  private static final int HeaderVersion = 4;
+  private static final int HeaderRecordCount = 8; /**< number of records that were ever created */
+  private static final int HeaderLiveCount = 12; /**< number of records of players who weren't deleted */
+  private static final int HeaderClean = 16; /**< 1 if store was closed cleanly, so the index can be trusted */
+  private static final int HeaderCheckpointSeq = 24; /**< sequence number of last journal record that is on disk in the records file */
+
+  // offsets of fields in each record
+  private static final int RecSeq = 0;
+  private static final int RecLive = 8; /**< 1 if record is of a player who wasn't deleted */
+  private static final int RecGamesWon = 12;
+  private static final int RecGamesPlayed = 16;
+  private static final int RecNameLength = 20;
+  private static final int RecName = 22; /**< name characters, which take up MaxNameLength chars */
+  private static final int RecPasswordLength = RecName + 2 * PlayerData.MaxNameLength;
+  private static final int RecPassword = RecPasswordLength + 2; /**< password characters, which take up MaxPasswordLength chars */
+
+  // index file is a header followed by slots, each of which is the name hash followed by the record number + 1
+  // (record number 0 means the slot is empty, and -1 means that the player in the slot was deleted)
+  private static final int IndexHeaderSize = 8; /**< index file starts with its capacity and number of used slots */
+  private static final int SlotSize = 8;
+
+  private final String recordsPath; /**< file path of records */
+  private final String indexPath; /**< file path of index */
+  private FileChannel recordsChannel; /**< channel for records file */
+  private MappedByteBuffer header; /**< mapped header of records file */
+  private ArrayList<MappedByteBuffer> segments; /**< segments of records file that were mapped so far (null if not mapped yet) */
+  private MappedByteBuffer index; /**< mapped index file */
+  private int indexCapacity; /**< number of slots in index (always a power of 2) */
+  private int indexUsed; /**< number of index slots that aren't empty (including deleted players) */
+  private PlayerJournal journal; /**< journal of changes since the last checkpoint */
+
+  /** constructor for player store using specified files */
+  public MappedPlayerStore(String newRecordsPath, String newIndexPath, String journalPath) {
+    recordsPath = newRecordsPath;
+    indexPath = newIndexPath;
+    segments = new ArrayList<MappedByteBuffer>();
+    journal = new PlayerJournal(journalPath);
+  }
+
+  /** open files (creating them if they don't exist) and replay journal
+      (must be called before using store) */
+  public void load() throws IOException {
+    boolean isNew, clean;
+    recordsChannel = FileChannel.open(Paths.get(recordsPath), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    header = recordsChannel.map(FileChannel.MapMode.READ_WRITE, 0, RecordSize);
+    isNew = header.getInt(HeaderMagic) == 0;
+    if (isNew) {
+      header.putInt(HeaderMagic, Magic);
+      header.putInt(HeaderVersion, Version);
+      header.putInt(HeaderClean, 1);
+    }
+    else if (header.getInt(HeaderMagic) != Magic || header.getInt(HeaderVersion) != Version) {
+      throw new StreamCorruptedException("Invalid player records file");
+    }
+    clean = header.getInt(HeaderClean) == 1 && Files.exists(Paths.get(indexPath));
+    header.putInt(HeaderClean, 0);
+    header.force();
+    if (clean) {
+      mapIndex(indexPath);
+    }
+    else {
+      if (!isNew) {
+        System.out.println("Player store wasn't closed cleanly, so rebuilding index");
+      }
+      rebuildIndex(indexCapacityFor(header.getInt(HeaderRecordCount)));
+    }
+    journal.open(header.getLong(HeaderCheckpointSeq), this);
+  }
+
+  /** add specified players, which must have unique names that aren't in the store yet, without writing them to the journal
+      (used to move players from a HeapPlayerStore, and forces them to disk before returning;
+       fails without finishing if a player's name or password is too long to store) */
+  public void importPlayers(Iterable<PlayerData> players) throws IOException {
+    for (PlayerData player : players) {
+      if (player.getName().length() > PlayerData.MaxNameLength || player.getPassword().length() > PlayerData.MaxPasswordLength) {
+        throw new IOException("Player \"" + player.getName() + "\" has a name longer than " + PlayerData.MaxNameLength
+                              + " characters or a password longer than " + PlayerData.MaxPasswordLength + " characters, which don't fit in a player record");
+      }
+      applyCreate(journal.getLastSeq(), player);
+    }
+    new Checkpoint(journal.getLastSeq()).write();
+  }
+
+  public PlayerData get(String name) {
+    int record = find(name);
+    return (record >= 0) ? readPlayer(record) : null;
+  }
+
+  public int size() {
+    return header.getInt(HeaderLiveCount);
+  }
+
+  public boolean isLoaded() {
+    return true; // records are read when they are needed
+  }
+
+  public Iterator<PlayerData> iterator() {
+    return new RecordIterator();
+  }
+
+  public void create(String name, String password) {
+    if (name.length() > PlayerData.MaxNameLength || password.length() > PlayerData.MaxPasswordLength) {
+      throw new IllegalArgumentException("Player name or password is too long to store");
+    }
+    PlayerData player = new PlayerData(name, password, 0, 0);
+    applyCreate(journal.logCreate(player), player);
+  }
+
+  public void setPassword(String name, String password) {
+    if (password.length() > PlayerData.MaxPasswordLength) {
+      throw new IllegalArgumentException("Password is too long to store");
+    }
+    applyPassword(journal.logPassword(name, password), name, password);
+  }
+
+  public void winGame(String name) {
+    applyWin(journal.logWin(name), name);
+  }
+
+  public void loseGame(String name) {
+    applyLoss(journal.logLoss(name), name);
+  }
+
+  public void delete(String name) {
+    applyDelete(journal.logDelete(name), name);
+  }
+
+  /** commit journal, and force records to disk if the journal has gotten long */
+  public void commit(PlayerJournal.CommitListener listener) {
+    journal.commit(listener, journal.isCheckpointDue() ? new Checkpoint(journal.getLastSeq()) : null);
+  }
+
+  /** finish writing journal, then force records and index to disk and mark store as closed cleanly */
+  public void close() throws IOException {
+    journal.close();
+    new Checkpoint(journal.getLastSeq()).write();
+    index.force();
+    header.putInt(HeaderClean, 1);
+    header.force();
+    recordsChannel.close();
+  }
+
+  public void applyCreate(long seq, PlayerData player) {
+    ByteBuffer buffer;
+    int record;
+    if (find(player.getName()) >= 0) {
+      return; // create was already applied before the server stopped
+    }
+    if (player.getName().length() > PlayerData.MaxNameLength || player.getPassword().length() > PlayerData.MaxPasswordLength) {
+      throw new IllegalArgumentException("Player name or password is too long to store");
+    }
+    record = header.getInt(HeaderRecordCount);
+    header.putInt(HeaderRecordCount, record + 1);
+    buffer = recordBuffer(record);
+    buffer.putLong(RecSeq, seq);
+    buffer.putInt(RecGamesWon, player.getGamesWon());
+    buffer.putInt(RecGamesPlayed, player.getGamesPlayed());
+    putChars(buffer, RecNameLength, player.getName());
+    putChars(buffer, RecPasswordLength, player.getPassword());
+    buffer.putInt(RecLive, 1);
+    header.putInt(HeaderLiveCount, header.getInt(HeaderLiveCount) + 1);
+    insert(player.getName(), record);
+  }
+
+  public void applyPassword(long seq, String name, String password) {
+    ByteBuffer buffer = changeBuffer(seq, name);
+    if (buffer != null) {
+      putChars(buffer, RecPasswordLength, password);
+    }
+  }
+
+  public void applyWin(long seq, String name) {
+    ByteBuffer buffer = changeBuffer(seq, name);
+    if (buffer != null) {
+      buffer.putInt(RecGamesWon, buffer.getInt(RecGamesWon) + 1);
+      buffer.putInt(RecGamesPlayed, buffer.getInt(RecGamesPlayed) + 1);
+    }
+  }
+
+  public void applyLoss(long seq, String name) {
+    ByteBuffer buffer = changeBuffer(seq, name);
+    if (buffer != null) {
+      buffer.putInt(RecGamesPlayed, buffer.getInt(RecGamesPlayed) + 1);
+    }
+  }
+
+  public void applyDelete(long seq, String name) {
+    int slot = findSlot(name);
+    ByteBuffer buffer;
+    if (slot < 0) {
+      return;
+    }
+    buffer = recordBuffer(index.getInt(slot + 4) - 1);
+    buffer.putLong(RecSeq, seq);
+    buffer.putInt(RecLive, 0);
+    index.putInt(slot + 4, -1);
+    header.putInt(HeaderLiveCount, header.getInt(HeaderLiveCount) - 1);
+  }
+
+  /** returns buffer for record of specified player with its sequence number set to the specified one,
+      or null if there is no such player or the change was already applied before the server stopped */
+  private ByteBuffer changeBuffer(long seq, String name) {
+    int record = find(name);
+    ByteBuffer buffer;
+    if (record < 0) {
+      return null;
+    }
+    buffer = recordBuffer(record);
+    if (seq <= buffer.getLong(RecSeq)) {
+      return null;
+    }
+    buffer.putLong(RecSeq, seq);
+    return buffer;
+  }
+
+  /** returns number of record of specified player, or -1 if there is no such player */
+  private int find(String name) {
+    int slot = findSlot(name);
+    return (slot >= 0) ? index.getInt(slot + 4) - 1 : -1;
+  }
+
+  /** returns byte offset in index of slot of specified player, or -1 if there is no such player */
+  private int findSlot(String name) {
+    int hash = hash(name);
+    int i = hash & (indexCapacity - 1);
+    int slot, record;
+    while (true) {
+      slot = IndexHeaderSize + i * SlotSize;
+      record = index.getInt(slot + 4);
+      if (record == 0) {
+        return -1;
+      }
+      if (record > 0 && index.getInt(slot) == hash && getChars(recordBuffer(record - 1), RecNameLength).equals(name)) {
+        return slot;
+      }
+      i = (i + 1) & (indexCapacity - 1);
+    }
+  }
+
+  /** add specified record of specified player (who isn't in the index yet) to index, growing the index if it's getting full */
+  private void insert(String name, int record) {
+    int hash = hash(name);
+    int i = hash & (indexCapacity - 1);
+    int slot;
+    if ((indexUsed + 1) * 2 > indexCapacity) {
+      try {
+        rebuildIndex(indexCapacityFor(size()));
+      }
+      catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+      if (find(name) >= 0) {
+        return; // record was already added by rebuild
+      }
+      i = hash & (indexCapacity - 1);
+    }
+    while (true) {
+      slot = IndexHeaderSize + i * SlotSize;
+      if (index.getInt(slot + 4) <= 0) {
+        if (index.getInt(slot + 4) == 0) {
+          indexUsed++;
+          index.putInt(4, indexUsed);
+        }
+        index.putInt(slot, hash);
+        index.putInt(slot + 4, record + 1);
+        return;
+      }
+      i = (i + 1) & (indexCapacity - 1);
+    }
+  }
+
+  /** write a new index with specified capacity containing every live record, and replace the current index with it
+      (if several live records have the same name, which can happen if the server stopped while creating a player,
+       the one with the later sequence number is kept) */
+  private void rebuildIndex(int capacity) throws IOException {
+    String tempPath = indexPath + ".tmp";
+    int nRecords = header.getInt(HeaderRecordCount);
+    int liveCount = 0;
+    int record, other;
+    ByteBuffer buffer;
+    Files.deleteIfExists(Paths.get(tempPath));
+    createIndex(tempPath, capacity);
+    for (record = 0; record < nRecords; record++) {
+      buffer = recordBuffer(record);
+      if (buffer.getInt(RecLive) != 1) {
+        continue;
+      }
+      String name = getChars(buffer, RecNameLength);
+      other = find(name);
+      if (other >= 0) {
+        if (recordBuffer(other).getLong(RecSeq) >= buffer.getLong(RecSeq)) {
+          buffer.putInt(RecLive, 0);
+          continue;
+        }
+        recordBuffer(other).putInt(RecLive, 0);
+        index.putInt(findSlot(name) + 4, record + 1);
+        continue;
+      }
+      liveCount++;
+      insert(name, record);
+    }
+    header.putInt(HeaderLiveCount, liveCount);
+    index.force();
+    Files.move(Paths.get(tempPath), Paths.get(indexPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** create empty index file with specified capacity at specified path, and use it as the index */
+  private void createIndex(String path, int capacity) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      index = channel.map(FileChannel.MapMode.READ_WRITE, 0, IndexHeaderSize + (long)capacity * SlotSize);
+    }
+    finally {
+      channel.close(); // mapping stays valid after channel is closed
+    }
+    index.putInt(0, capacity);
+    index.putInt(4, 0);
+    indexCapacity = capacity;
+    indexUsed = 0;
+  }
+
+  /** map existing index file at specified path and use it as the index */
+  private void mapIndex(String path) throws IOException {
+    FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+    finally {
+      channel.close();
+    }
+    indexCapacity = index.getInt(0);
+    indexUsed = index.getInt(4);
+  }
+
+  /** returns buffer whose position 0 is the start of specified record, mapping the segment containing it if necessary */
+  private ByteBuffer recordBuffer(int record) {
+    int segment = record / SegmentRecords;
+    ByteBuffer buffer;
+    while (segments.size() <= segment) {
+      try {
+        segments.add(recordsChannel.map(FileChannel.MapMode.READ_WRITE, RecordSize + (long)segments.size() * SegmentRecords * RecordSize, (long)SegmentRecords * RecordSize));
+      }
+      catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+    buffer = segments.get(segment).duplicate();
+    buffer.position((record % SegmentRecords) * RecordSize);
+    return buffer.slice();
+  }
+
+  /** returns player in specified record */
+  private PlayerData readPlayer(int record) {
+    ByteBuffer buffer = recordBuffer(record);
+    return new PlayerData(getChars(buffer, RecNameLength), getChars(buffer, RecPasswordLength), buffer.getInt(RecGamesWon), buffer.getInt(RecGamesPlayed));
+  }
+
+  /** write specified string as its length followed by its characters at specified offset in specified buffer */
+  private static void putChars(ByteBuffer buffer, int offset, String str) {
+    int i;
+    buffer.putShort(offset, (short)str.length());
+    for (i = 0; i < str.length(); i++) {
+      buffer.putChar(offset + 2 + 2 * i, str.charAt(i));
+    }
+  }
+
+  /** returns string written by putChars() at specified offset in specified buffer */
+  private static String getChars(ByteBuffer buffer, int offset) {
+    char[] chars = new char[buffer.getShort(offset)];
+    int i;
+    for (i = 0; i < chars.length; i++) {
+      chars[i] = buffer.getChar(offset + 2 + 2 * i);
+    }
+    return new String(chars);
+  }
+
+  /** returns index capacity that is at least twice the specified number of players, so the index is at most half full */
+  private static int indexCapacityFor(int nPlayers) {
+    return Math.max(InitialIndexCapacity, Integer.highestOneBit(Math.max(nPlayers, 1) * 4));
+  }
+
+  /** returns hash of specified player name to use in index */
+  private static int hash(String name) {
+    int h = name.hashCode() * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+
+  /** forces records to disk, then remembers that the journal is no longer needed up to the specified sequence number */
+  private class Checkpoint implements PlayerJournal.Checkpoint {
+    private ArrayList<MappedByteBuffer> checkpointSegments; /**< segments that existed when checkpoint was committed */
+    private long lastSeq; /**< sequence number of last journal record included in checkpoint */
+
+    /** constructor for checkpoint including journal records up to specified sequence number */
+    public Checkpoint(long newLastSeq) {
+      lastSeq = newLastSeq;
+      checkpointSegments = new ArrayList<MappedByteBuffer>(segments);
+    }
+
+    /** force records to disk, then the header saying that they are on disk */
+    public void write() throws IOException {
+      for (MappedByteBuffer segment : checkpointSegments) {
+        segment.force();
+      }
+      header.putLong(HeaderCheckpointSeq, lastSeq);
+      header.force();
+    }
+  }
+
+  /** iterates over players in the order their records were created */
+  private class RecordIterator implements Iterator<PlayerData> {
+    private int nextRecord; /**< number of next record to check */
+
+    /** constructor for iterator starting from first record */
+    public RecordIterator() {
+      nextRecord = 0;
+      skipDeleted();
+    }
+
+    public boolean hasNext() {
+      return nextRecord < header.getInt(HeaderRecordCount);
+    }
+
+    public PlayerData next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      PlayerData ret = readPlayer(nextRecord++);
+      skipDeleted();
+      return ret;
+    }
+
+    /** advance to next record of a player who wasn't deleted */
+    private void skipDeleted() {
+      while (hasNext() && recordBuffer(nextRecord).getInt(RecLive) != 1) {
+        nextRecord++;
+      }
+    }
+  }
+}
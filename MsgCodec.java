@@ -0,0 +1,21 @@
+// MsgCodec.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+
+/** converts networking messages to and from the bytes of a single frame sent by PlayerSocket
+    (except ObjectStreamCodec, which PlayerSocket sends without frames) */
+public interface MsgCodec {
+  /** returns bytes of frame that represents specified message */
+  public byte[] encode(Object msg) throws IOException;
+
+  /** returns message represented by specified frame,
+      or null if the frame doesn't contain a message (such as a stream header) */
+  public Object decode(byte[] frame) throws IOException, ClassNotFoundException;
+
+  /** returns approximate number of bytes of previously encoded messages that this codec still keeps in memory */
+  public long getRetainedBytes();
+}
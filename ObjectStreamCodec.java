@@ -0,0 +1,86 @@
+// ObjectStreamCodec.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+
+/** message codec that uses Java serialization, with one continuous object stream per connection
+    (this is the original protocol, and is kept so that clients that don't support BinaryMsgCodec still work)
+
+    Unlike other codecs, an object stream is sent without frames, exactly as clients did before frames were added:
+    the bytes passed to decode() can be any part of the stream, and encode() returns the bytes that continue the stream.
+
+    An object stream remembers every object written to it so that it can write a reference if it sees the object again,
+    which keeps each message and everything it refers to in memory (on both ends) for the life of the connection.
+    To bound this, messages are written unshared and the stream is reset after ResetMessages messages or ResetBytes bytes. */
+public class ObjectStreamCodec implements MsgCodec {
+  public static final int ResetMessages = 64; /**< maximum number of messages to write between stream resets */
+  public static final int ResetBytes = 64 * 1024; /**< maximum number of bytes to write between stream resets */
+
+  private ByteArrayOutputStream outBytes; /**< collects bytes written by output stream until encode() returns them */
+  private ObjectOutputStream out; /**< writes messages to outBytes */
+  private byte[] header; /**< output stream header, which must be sent before any messages */
+  private ObjectStreamReader in; /**< reads messages from the bytes passed to decode() */
+  private int messagesSinceReset; /**< number of messages written since output stream was last reset */
+  private long bytesSinceReset; /**< number of bytes written since output stream was last reset */
+  private int resets; /**< number of times output stream was reset */
+
+  /** constructor for object stream codec */
+  public ObjectStreamCodec() throws IOException {
+    outBytes = new ByteArrayOutputStream();
+    out = new ObjectOutputStream(outBytes); // writes stream header to outBytes
+    header = takeBytes();
+    in = new ObjectStreamReader();
+  }
+
+  /** returns output stream header, which must be sent before any messages */
+  public final byte[] getHeader() {
+    return header;
+  }
+
+  public byte[] encode(Object msg) throws IOException {
+    byte[] ret;
+    if (messagesSinceReset >= ResetMessages || bytesSinceReset >= ResetBytes) {
+      // reset before the next message so that the reader sees the reset marker before it
+      out.reset();
+      messagesSinceReset = 0;
+      bytesSinceReset = 0;
+      resets++;
+    }
+    out.writeUnshared(msg); // so that writing a message object again doesn't just write a reference to its old contents
+    out.flush();
+    ret = takeBytes();
+    messagesSinceReset++;
+    bytesSinceReset += ret.length;
+    return ret;
+  }
+
+  /** appends specified bytes to the input stream, then returns the oldest message that has been completely received
+      (or null if there is none, so call this with no bytes to get the rest of the messages that the same bytes finished) */
+  public Object decode(byte[] bytes) throws IOException, ClassNotFoundException {
+    return in.read(bytes);
+  }
+
+  public long getRetainedBytes() {
+    return bytesSinceReset;
+  }
+
+  /** stop reading the input stream (called once the connection is closed) */
+  public void close() {
+    in.close();
+  }
+
+  /** getter for number of times output stream was reset */
+  public final int getResets() {
+    return resets;
+  }
+
+  /** returns bytes collected in outBytes, then clears outBytes */
+  private byte[] takeBytes() {
+    byte[] ret = outBytes.toByteArray();
+    outBytes.reset();
+    return ret;
+  }
+}
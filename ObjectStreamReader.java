@@ -0,0 +1,149 @@
+// ObjectStreamReader.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/** reads messages from a Java object stream that arrives in pieces of any size
+    (used for clients that send an unframed object stream, as clients did before messages were sent in frames)
+
+    An ObjectInputStream can't resume reading a message that only partly arrived,
+    so a reader thread reads the stream, waiting whenever it runs out of bytes,
+    and read() waits until the reader thread has read all the bytes passed to it. */
+public class ObjectStreamReader {
+  private static final long ReaderStackSize = 256 * 1024; /**< stack size to request for reader threads, in bytes */
+
+  private Thread reader; /**< thread that reads messages from the object stream (null until read() is first called) */
+  private byte[] inBytes; /**< bytes most recently passed to read() */
+  private int inPos; /**< index of first byte in inBytes that reader thread hasn't read yet */
+  private boolean readerWaiting; /**< whether reader thread read all of inBytes and is waiting for more */
+  private ArrayDeque<Object> msgs; /**< messages that reader thread read but read() hasn't returned yet */
+  private Exception error; /**< exception that stopped reader thread (null if it is still running) */
+  private boolean closed; /**< whether close() was called */
+
+  /** constructor for object stream reader */
+  public ObjectStreamReader() {
+    inBytes = new byte[0];
+    msgs = new ArrayDeque<Object>();
+  }
+
+  /** appends specified bytes to the object stream, then returns the oldest message that has been completely received
+      (or null if there is none, so call this with no bytes to get the rest of the messages that the same bytes finished) */
+  public synchronized Object read(byte[] bytes) throws IOException, ClassNotFoundException {
+    if (reader == null) {
+      reader = new Thread(null, new Reader(), "ObjectStreamReader", ReaderStackSize);
+      reader.setDaemon(true);
+      reader.start();
+    }
+    inBytes = bytes;
+    inPos = 0;
+    readerWaiting = false;
+    notifyAll();
+    try {
+      // wait until every message that the bytes finish has been read
+      while (error == null && !(readerWaiting && inPos == inBytes.length)) {
+        wait();
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading object stream");
+    }
+    if (!msgs.isEmpty()) {
+      return msgs.poll();
+    }
+    if (error instanceof IOException) {
+      throw (IOException)error;
+    }
+    if (error instanceof ClassNotFoundException) {
+      throw (ClassNotFoundException)error;
+    }
+    if (error != null) {
+      throw new StreamCorruptedException("Invalid object stream: " + error);
+    }
+    return null;
+  }
+
+  /** stop reader thread (called once the connection is closed) */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  /** returns whether specified buffer starts with the magic number of an object stream header
+      (considering the bytes before its position, which is how PlayerSocket fills its input buffer) */
+  public static boolean isStreamStart(ByteBuffer buffer) {
+    return buffer.position() >= 2 && buffer.getShort(0) == ObjectStreamConstants.STREAM_MAGIC;
+  }
+
+  /** reads messages from the bytes passed to read() on the reader thread */
+  private class Reader extends InputStream implements Runnable {
+    private final byte[] oneByte = new byte[1]; /**< buffer for read() of a single byte */
+
+    public void run() {
+      ObjectInputStream in;
+      Object msg;
+      Exception readError = null;
+      try {
+        in = new ObjectInputStream(this); // reads stream header
+        while (true) {
+          msg = in.readObject();
+          synchronized (ObjectStreamReader.this) {
+            msgs.add(msg);
+          }
+        }
+      }
+      catch (Exception ex) {
+        readError = ex;
+      }
+      finally {
+        // make read() stop waiting even if an error was thrown
+        synchronized (ObjectStreamReader.this) {
+          error = (readError != null) ? readError : new StreamCorruptedException("Object stream reader stopped");
+          ObjectStreamReader.this.notifyAll();
+        }
+      }
+    }
+
+    public int read() throws IOException {
+      return (read(oneByte, 0, 1) < 0) ? -1 : (oneByte[0] & 0xff);
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      int ret;
+      if (len == 0) {
+        return 0;
+      }
+      synchronized (ObjectStreamReader.this) {
+        try {
+          while (inPos == inBytes.length && !closed) {
+            // tell read() that every message these bytes finish has been read
+            readerWaiting = true;
+            ObjectStreamReader.this.notifyAll();
+            ObjectStreamReader.this.wait();
+          }
+        }
+        catch (InterruptedException ex) {
+          throw new InterruptedIOException("Interrupted while waiting for object stream");
+        }
+        if (closed) {
+          return -1;
+        }
+        ret = Math.min(len, inBytes.length - inPos);
+        System.arraycopy(inBytes, inPos, b, off, ret);
+        inPos += ret;
+        return ret;
+      }
+    }
+
+    public int available() {
+      synchronized (ObjectStreamReader.this) {
+        return inBytes.length - inPos;
+      }
+    }
+  }
+}
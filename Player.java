@@ -10,7 +10,6 @@ import java.io.*;
 
 /** represents a single player of the game German Whist and provides a wrapper around the player's hand deck */
 public class Player implements Serializable {
-  private static int activePlayer; /**< id of player who is currently playing a card */
   private int id; /**< determines playing order during a game */
   private Deck hand; /**< deck containing this player's cards */
   private int score; /**< number of tricks this player won */
@@ -27,17 +26,23 @@ public class Player implements Serializable {
     score = 0;
   }
 
+  /** copy hand and score of specified player, who should be the same player in another copy of the game */
+  public void copyFrom(Player player) {
+    hand.copyFrom(player.hand);
+    score = player.score;
+  }
+
   /** handle ending game in its current state */
   public void stopGame() {
     hand = new Deck();
   }
 
-  /** deal nCards cards from the talon to this player's hand */
+  /** deal nCards cards from the talon to this player's hand
+      (the hand is kept sorted by inserting each card in its place) */
   public void dealFrom(Deck talon, int nCards) {
     for (int i = 0; i < nCards; i++) {
-      talon.moveCardTo(hand, talon.size() - 1);
+      talon.moveCardToSorted(hand, talon.size() - 1);
     }
-    hand.sort();
   }
 
   /** play specified card for a trick,
@@ -49,7 +54,6 @@ public class Player implements Serializable {
     // card is valid, play it for trick
     hand.setAllFaceUp(true);
     hand.moveCardTo(trick, cardIndex);
-    activePlayer++;
     return true;
   }
 
@@ -59,17 +63,10 @@ public class Player implements Serializable {
     if (cardIndex < 0 || cardIndex >= hand.size()) {
       throw new IndexOutOfBoundsException("Card index out of bounds");
     }
-    // card may be invalid if is different suit from 1st card in trick
-    if (trick.size() > 0 && hand.getCard(cardIndex).getSuit() != trick.getCard(0).getSuit()) {
-      // if not same suit as leading card, card is invalid if hand has a card with the same suit
-      // (I didn't implement this for HW 2 because I misunderstood what "follow suit" meant)
-      for (int i = 0; i < hand.size(); i++) {
-        if (hand.getCard(i).getSuit() == trick.getCard(0).getSuit()) {
-          return false;
-        }
-      }
-    }
-    return true;
+    // card is invalid if it is a different suit from 1st card in trick and hand has a card with the same suit
+    // (I didn't implement this for HW 2 because I misunderstood what "follow suit" meant)
+    return trick.size() == 0 || hand.getCard(cardIndex).getSuit() == trick.getCard(0).getSuit()
+           || !hand.hasSuit(trick.getCard(0).getSuit());
   }
 
   /** draw the cards and a label of this player's hand */
@@ -95,7 +92,6 @@ public class Player implements Serializable {
   /** called when this player won a trick */
   public void winTrick() {
     score++;
-    activePlayer = id;
   }
 
   /** getter for hand deck */
@@ -122,14 +118,4 @@ public class Player implements Serializable {
   public final boolean handIsEmpty() {
     return (hand.size() == 0);
   }
-
-  /** setter for currently active player */
-  public static void setActivePlayer(int newActivePlayer) {
-    activePlayer = newActivePlayer;
-  }
-
-  /** getter for currently active player */
-  public static final int getActivePlayer() {
-    return activePlayer;
-  }
 }
@@ -8,6 +8,10 @@ import java.io.*;
 
 /** information about each player that is saved to file between sessions */
 public class PlayerData implements Serializable {
+  private static final long serialVersionUID = 8187259959291498618L;
+  public static final int MaxNameLength = 32; /**< maximum number of characters in names of new players (if players are kept in a MappedPlayerStore) */
+  public static final int MaxPasswordLength = 64; /**< maximum number of characters in new passwords (if players are kept in a MappedPlayerStore) */
+
   private String name; /**< name of this player */
   private String password; /**< password to sign in to this player's account */
   private int gamesWon; /**< number of games this player won (doesn't include ties) */
@@ -57,6 +61,12 @@ public class PlayerData implements Serializable {
     return name;
   }
 
+  /** getter for password
+      (package-private so that only the server's persistence code can read it) */
+  final String getPassword() {
+    return password;
+  }
+
   /** getter for games won */
   public final int getGamesWon() {
     return gamesWon;
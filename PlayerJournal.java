@@ -0,0 +1,414 @@
+// PlayerJournal.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/** append-only journal of changes to players, which a PlayerStore writes before making each change
+    so that each change costs one small sequential write instead of rewriting every player
+
+    Each journal record has a sequence number, and a checkpoint (which the store writes every so often)
+    remembers the last sequence number it includes, so the journal only needs records made since the last checkpoint.
+    A record that was only partly written when the server stopped fails its checksum and is discarded on the next load.
+    If a write fails partway while the server is running, the journal is truncated back to its previous end
+    so that records written after it aren't hidden behind the partial record when the journal is replayed.
+
+    Files are written by a separate writer thread, so the server never waits for the disk.
+    The writer groups together the batches that are committed close together in time,
+    and writes them with a single write and a single call to force them to disk. */
+public class PlayerJournal {
+  public static final int CheckpointInterval = 1000; /**< number of journal records to write before the store writes a checkpoint */
+  public static final int MaxBatchDelay = 2; /**< how long the writer waits for more batches to write together with the first one, in milliseconds */
+  public static final int MaxBatchBytes = 64 * 1024; /**< the writer stops waiting for more batches once it has this many bytes of records to write */
+
+  // journal record types
+  private static final byte RecordCreate = 1;
+  private static final byte RecordPassword = 2;
+  private static final byte RecordWin = 3;
+  private static final byte RecordLoss = 4;
+  private static final byte RecordDelete = 5;
+
+  private final String path; /**< file path of journal (null if changes aren't saved) */
+  private FileChannel journal; /**< channel that records are appended to */
+  private ByteArrayOutputStream pending; /**< records that haven't been committed yet */
+  private long nextSeq; /**< sequence number of next journal record */
+  private int recordsSinceCheckpoint; /**< number of records in journal since last checkpoint */
+  private LinkedBlockingQueue<Batch> batches; /**< committed batches that the writer thread hasn't written yet */
+  private Thread writer; /**< thread that writes batches to disk (null if not started) */
+  private volatile boolean closed; /**< whether close() was called, after which nothing more is written */
+  private boolean failed; /**< whether a failed write couldn't be truncated away, after which nothing more is written (only used by writer thread) */
+
+  /** constructor for player journal using specified file
+      (if path is null, changes are not saved, which benchmarks use) */
+  public PlayerJournal(String newPath) {
+    path = newPath;
+    pending = new ByteArrayOutputStream();
+    batches = new LinkedBlockingQueue<Batch>();
+    nextSeq = 1;
+  }
+
+  /** apply journal records after specified sequence number (the last one included in the store's checkpoint) to specified target,
+      then start writing new records after them
+      (also discards any partly written record at the end of the journal) */
+  public void open(long lastSeq, Target target) throws IOException {
+    nextSeq = lastSeq + 1;
+    if (path == null) {
+      return;
+    }
+    journal = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    replay(lastSeq, target);
+    writer = new Thread(new Writer(), "PlayerJournalWriter");
+    writer.setDaemon(true); // close() is called on exit to finish writing
+    writer.start();
+  }
+
+  /** record that specified player was created, returning sequence number of record */
+  public long logCreate(PlayerData player) {
+    RecordStream out = beginRecord(RecordCreate, player.getName());
+    try {
+      out.writeUTF(player.getPassword());
+      out.writeInt(player.getGamesWon());
+      out.writeInt(player.getGamesPlayed());
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex); // can't happen when writing to a byte array
+    }
+    return endRecord(out);
+  }
+
+  /** record that specified player changed password, returning sequence number of record */
+  public long logPassword(String name, String password) {
+    RecordStream out = beginRecord(RecordPassword, name);
+    try {
+      out.writeUTF(password);
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    return endRecord(out);
+  }
+
+  /** record that specified player won a game, returning sequence number of record */
+  public long logWin(String name) {
+    return endRecord(beginRecord(RecordWin, name));
+  }
+
+  /** record that specified player lost a game or the game was a tie, returning sequence number of record */
+  public long logLoss(String name) {
+    return endRecord(beginRecord(RecordLoss, name));
+  }
+
+  /** record that specified player was deleted, returning sequence number of record */
+  public long logDelete(String name) {
+    return endRecord(beginRecord(RecordDelete, name));
+  }
+
+  /** returns sequence number of the last record logged */
+  public long getLastSeq() {
+    return nextSeq - 1;
+  }
+
+  /** returns whether enough records were written since the last checkpoint that the store should write a new one */
+  public boolean isCheckpointDue() {
+    return recordsSinceCheckpoint >= CheckpointInterval;
+  }
+
+  /** hand records logged since the last commit to the writer thread, without waiting for them to be written
+      (specified listener, which may be null, is told from the writer thread when the records are on disk,
+       or right away that they weren't saved if the journal was closed,
+       and specified checkpoint, which may be null, is written after the records and then the journal is emptied) */
+  public void commit(CommitListener listener, Checkpoint checkpoint) {
+    Batch batch = new Batch();
+    batch.records = pending.toByteArray();
+    batch.listener = listener;
+    batch.checkpoint = checkpoint;
+    pending.reset();
+    if (checkpoint != null) {
+      recordsSinceCheckpoint = 0;
+    }
+    if (batch.records.length == 0 && checkpoint == null && listener == null) {
+      return; // nothing to do
+    }
+    if (closed) {
+      // journal file is closed, so the records can't be saved
+      if (listener != null) {
+        listener.committed(false);
+      }
+      return;
+    }
+    if (writer == null) {
+      // changes aren't saved, so there is nothing to wait for
+      if (listener != null) {
+        listener.committed(true);
+      }
+      return;
+    }
+    batches.add(batch);
+  }
+
+  /** finish writing committed batches, then close journal file */
+  public void close() throws IOException {
+    closed = true;
+    if (writer != null) {
+      batches.add(new Batch()); // batch with null records tells writer to stop
+      try {
+        writer.join();
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      writer = null;
+    }
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  /** append specified records to journal and wait until they are on disk
+      (if that fails, the journal is truncated back to where it ended, so it never ends with part of a record) */
+  private void append(byte[] records) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(records);
+    long start;
+    if (failed) {
+      throw new IOException("Player journal may end with a partly written record");
+    }
+    start = journal.size();
+    try {
+      while (buffer.hasRemaining()) {
+        journal.write(buffer, start + buffer.position());
+      }
+      journal.force(false);
+    }
+    catch (IOException ex) {
+      try {
+        journal.truncate(start);
+        journal.force(false);
+      }
+      catch (IOException truncateEx) {
+        failed = true; // records appended after the partial one would be lost on replay, so don't report any more as saved
+      }
+      throw ex;
+    }
+  }
+
+  /** apply journal records after specified sequence number to specified target,
+      then truncate journal after the last complete record */
+  private void replay(long lastSeq, Target target) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(journal.position(0))));
+    long validEnd = 0;
+    byte[] record;
+    CRC32 crc = new CRC32();
+    int length, checksum;
+    while (true) {
+      try {
+        length = in.readInt();
+        checksum = in.readInt();
+        if (length <= 0 || length > journal.size()) {
+          break;
+        }
+        record = new byte[length];
+        in.readFully(record);
+      }
+      catch (EOFException ex) {
+        break;
+      }
+      crc.reset();
+      crc.update(record);
+      if ((int)crc.getValue() != checksum) {
+        break;
+      }
+      validEnd += 8 + length;
+      apply(record, lastSeq, target);
+    }
+    if (validEnd < journal.size()) {
+      System.out.println("Discarding " + (journal.size() - validEnd) + " bytes of incomplete player journal");
+      journal.truncate(validEnd);
+      journal.force(true);
+    }
+  }
+
+  /** apply specified journal record to specified target, unless it was already included in the checkpoint */
+  private void apply(byte[] record, long lastSeq, Target target) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    long seq = in.readLong();
+    byte type = in.readByte();
+    String name = in.readUTF();
+    if (seq <= lastSeq) {
+      return;
+    }
+    nextSeq = Math.max(nextSeq, seq + 1);
+    recordsSinceCheckpoint++;
+    if (type == RecordCreate) {
+      target.applyCreate(seq, new PlayerData(name, in.readUTF(), in.readInt(), in.readInt()));
+    }
+    else if (type == RecordPassword) {
+      target.applyPassword(seq, name, in.readUTF());
+    }
+    else if (type == RecordWin) {
+      target.applyWin(seq, name);
+    }
+    else if (type == RecordLoss) {
+      target.applyLoss(seq, name);
+    }
+    else if (type == RecordDelete) {
+      target.applyDelete(seq, name);
+    }
+    else {
+      throw new StreamCorruptedException("Unknown player journal record type " + type);
+    }
+  }
+
+  /** returns stream to write the rest of a new journal record to */
+  private RecordStream beginRecord(byte type, String name) {
+    RecordStream out = new RecordStream();
+    try {
+      out.writeLong(nextSeq++);
+      out.writeByte(type);
+      out.writeUTF(name);
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    return out;
+  }
+
+  /** add record that was written to specified stream (returned by beginRecord()) to pending records,
+      and return its sequence number */
+  private long endRecord(RecordStream out) {
+    ByteArrayOutputStream record = out.getRecord();
+    CRC32 crc = new CRC32();
+    DataOutputStream pendingOut = new DataOutputStream(pending);
+    crc.update(record.toByteArray());
+    try {
+      pendingOut.writeInt(record.size());
+      pendingOut.writeInt((int)crc.getValue());
+      record.writeTo(pendingOut);
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    recordsSinceCheckpoint++;
+    return nextSeq - 1;
+  }
+
+  /** interface for applying journal records to a store when it is loaded */
+  public interface Target {
+    /** apply record creating specified player */
+    public void applyCreate(long seq, PlayerData player);
+
+    /** apply record changing password of specified player */
+    public void applyPassword(long seq, String name, String password);
+
+    /** apply record of specified player winning a game */
+    public void applyWin(long seq, String name);
+
+    /** apply record of specified player losing a game */
+    public void applyLoss(long seq, String name);
+
+    /** apply record deleting specified player */
+    public void applyDelete(long seq, String name);
+  }
+
+  /** interface for a store to save all players that it has, so that the journal can be emptied */
+  public interface Checkpoint {
+    /** called from the writer thread after the records before the checkpoint are on disk */
+    public void write() throws IOException;
+  }
+
+  /** interface for being told when committed records are on disk */
+  public interface CommitListener {
+    /** called from the writer thread after trying to write the records (or from commit() if the journal was closed),
+        with whether they were successfully written to disk */
+    public void committed(boolean durable);
+  }
+
+  /** records committed together, and possibly a checkpoint to write after them */
+  private static class Batch {
+    public byte[] records; /**< journal records to append (null tells writer thread to stop) */
+    public CommitListener listener; /**< listener to tell when records are on disk (may be null) */
+    public Checkpoint checkpoint; /**< checkpoint to write after records (null if not time for a checkpoint) */
+  }
+
+  /** stream that a single journal record is written to before it is added to pending records */
+  private static class RecordStream extends DataOutputStream {
+    /** constructor for empty record stream */
+    public RecordStream() {
+      super(new ByteArrayOutputStream());
+    }
+
+    /** returns bytes written to this stream */
+    public ByteArrayOutputStream getRecord() {
+      return (ByteArrayOutputStream)out;
+    }
+  }
+
+  /** writes committed batches to disk in the order they were committed */
+  private class Writer implements Runnable {
+    /** write batches until close() is called */
+    public void run() {
+      ArrayList<Batch> group = new ArrayList<Batch>();
+      ByteArrayOutputStream groupRecords = new ByteArrayOutputStream();
+      boolean stop = false;
+      boolean durable;
+      long deadline;
+      Batch batch;
+      int i;
+      while (!stop) {
+        // wait for a batch, then for more batches to write with it until the time or size limit is reached
+        group.clear();
+        groupRecords.reset();
+        try {
+          batch = batches.take();
+          deadline = System.nanoTime() + MaxBatchDelay * 1000000L;
+          while (batch != null) {
+            if (batch.records == null) {
+              stop = true;
+              break;
+            }
+            group.add(batch);
+            groupRecords.write(batch.records, 0, batch.records.length);
+            if (batch.checkpoint != null || groupRecords.size() >= MaxBatchBytes) {
+              break; // checkpoint includes every record before it, so write it right away
+            }
+            batch = batches.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+          }
+        }
+        catch (InterruptedException ex) {
+          stop = true;
+        }
+        if (group.isEmpty()) {
+          continue;
+        }
+        // write the group and tell listeners whether it worked
+        try {
+          append(groupRecords.toByteArray());
+          batch = group.get(group.size() - 1);
+          if (batch.checkpoint != null) {
+            batch.checkpoint.write();
+            journal.truncate(0);
+            journal.force(true);
+          }
+          durable = true;
+        }
+        catch (IOException ex) {
+          System.out.println("Error saving player data to file.");
+          System.out.println("Make sure the \"save\" folder exists.");
+          durable = false;
+        }
+        for (i = 0; i < group.size(); i++) {
+          if (group.get(i).listener != null) {
+            group.get(i).listener.committed(durable);
+          }
+        }
+      }
+    }
+  }
+}
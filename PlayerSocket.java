@@ -6,24 +6,109 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
 
-/** encapsulates Socket-related classes for a single player */
+/** encapsulates Socket-related classes for a single player
+    (each message is sent as a frame consisting of its length followed by its bytes,
+     so that the server can tell when a whole message has arrived on a non-blocking channel;
+     clients from before frames were added send a plain Java object stream instead, which is still accepted, see below)
+
+    Frames that haven't been written yet are queued separately rather than copied into one buffer,
+    so that a Broadcast frame can be shared by every client it is sent to,
+    and they are written to the channel with a single gathering write where possible.
+    The queue is bounded: when a client falls so far behind reading that more than MaxQueuedFrames frames
+    or MaxQueuedBytes bytes are waiting for it, the socket's OverflowPolicy decides which frames to drop,
+    and if that isn't enough the SlowConsumerListener is told to disconnect the client.
+    The server thread never waits for a slow client: with a non-blocking channel, frames are written when the selector
+    says the channel is writable, and with a blocking channel, a writer thread calls writeQueued() to write them.
+    If there is a FlushListener, messages aren't written as soon as they are queued, but when flushBatch() is called,
+    so that the server writes all messages it sent to a client while handling a round of events at once
+    (unless they have waited MaxFlushDelay or there are MaxFlushBytes of them).
+
+    The first bytes the client sends choose the codec used to encode messages:
+    a BinaryMsgCodec hello frame, or the header of an unframed object stream for clients that only support ObjectStreamCodec
+    (which can't be mistaken for a frame length, since it starts with 0xACED and frame lengths start with a 0 byte).
+    The server replies with a hello frame or its own unframed object stream header, respectively. */
 public class PlayerSocket {
-  private Socket socket; /**< client socket that is endpoint for network communication */
-  private ObjectInputStream in; /**< reads messages related to this player over the network */
-  private ObjectOutputStream out; /**< writes messages related to this player over the network */
+  public static final int MaxFrameSize = 1 << 24; /**< maximum size of a single message frame, in bytes */
+  private static final int BufferSize = 8192; /**< initial size of network buffers, in bytes */
+  private static final int MaxIdleBufferSize = 64 * 1024; /**< input buffers larger than this are shrunk once they are mostly empty, in bytes */
+  private static final int MaxGatherFrames = 64; /**< maximum number of frames to pass to a single gathering write */
+  public static final int MaxQueuedFrames = 1024; /**< maximum number of frames waiting to be written to a single client */
+  public static final int MaxQueuedBytes = 1024 * 1024; /**< maximum number of bytes waiting to be written to a single client */
+  public static final int MaxFlushDelay = 2; /**< longest that a message waits for flushBatch() before it is written anyway, in milliseconds */
+  public static final int MaxFlushBytes = 64 * 1024; /**< messages are written without waiting for flushBatch() once this many bytes are queued */
+
+  /** what to do when a client's queue of frames waiting to be written is full
+      (clients using ObjectStreamCodec are always disconnected, since skipping part of an object stream corrupts the rest of it) */
+  public enum OverflowPolicy {
+    /** drop lobby updates that are made stale by a later one in the queue, and disconnect the client if that isn't enough
+        (the client asks for the whole games list when it sees that it missed a LobbyDeltaMsg) */
+    Coalesce,
+    /** drop the oldest frames that haven't started being written yet
+        (this can drop game messages, so it only suits clients that don't play) */
+    DropOldest,
+    /** disconnect the client */
+    Disconnect
+  }
+
+  /** receives notice that messages were queued that are waiting for flushBatch() to be written */
+  public interface FlushListener {
+    /** called (on the thread that wrote to the client) when a message is queued for the first time since flushBatch() was called */
+    public void flushNeeded(PlayerSocket client);
+  }
+
+  /** receives notice that a client fell too far behind reading its messages and should be disconnected */
+  public interface SlowConsumerListener {
+    /** called (on the thread that wrote to the client) when the client's frames no longer fit in its queue */
+    public void slowConsumer(PlayerSocket client);
+  }
+
+  private Socket socket; /**< client socket that is endpoint for network communication (null if using a channel) */
+  private ByteChannel channel; /**< channel that is endpoint for network communication on the server (null if using a socket) */
+  private SelectionKey key; /**< key that channel is registered with, used to wait until channel can be written to */
+  private ByteBuffer inBuffer; /**< bytes received over the network that haven't been decoded yet */
+  private WritableByteChannel socketOut; /**< channel that writes to the client socket's output stream (null if using a channel) */
+  private ArrayDeque<QueuedFrame> outFrames; /**< frames that haven't been completely written yet, oldest first */
+  private ByteBuffer[] gatherFrames; /**< frames passed to the current gathering write (only kept to avoid reallocating it) */
+  private long pendingBytes; /**< number of bytes in outFrames that haven't been written yet */
+  private int framesInFlight; /**< number of frames at start of outFrames that a writer thread is writing (which can't be dropped) */
+  private boolean useWriterThread; /**< whether frames are written by a writer thread calling writeQueued() instead of as soon as they are queued */
+  private boolean closed; /**< whether disconnect() was called */
+  private OverflowPolicy overflowPolicy; /**< what to do when the queue of frames waiting to be written is full */
+  private SlowConsumerListener slowConsumerListener; /**< told when this client must be disconnected because it fell behind (may be null) */
+  private FlushListener flushListener; /**< told when messages are waiting for flushBatch() (if null, messages are written as soon as they are queued) */
+  private boolean flushPending; /**< whether messages were queued since flushBatch() was last called */
+  private long batchStartTime; /**< value of System.nanoTime() when the oldest message waiting for flushBatch() was queued */
+  private boolean evicted; /**< whether this client fell too far behind, so no more frames are queued for it */
+  private int maxQueuedFrames; /**< most frames that were waiting to be written at once */
+  private long maxQueuedBytes; /**< most bytes that were waiting to be written at once */
+  private long droppedFrames; /**< number of frames that were dropped because the queue was full */
+  private MsgCodec codec; /**< converts messages related to this player to and from frames (null until the client chooses one) */
+  private int protocolVersion; /**< version of binary protocol agreed on with the other side (0 if using ObjectStreamCodec) */
+  private boolean awaitingHello; /**< whether client is waiting for server to reply to its hello frame */
+  private boolean unframed; /**< whether bytes are passed to and from the codec as they are, without length prefixes (for object streams) */
+  private boolean endOfStream; /**< whether the other side closed the connection */
   private String playerName; /**< name of player associated with this socket */
+  private int id; /**< number that the server uses to identify this connection in log messages */
 
-  /** constructor for player socket */
+  /** constructor for player socket that uses a blocking socket (used by clients) */
   public PlayerSocket(Socket newSocket) throws IOException {
     if (newSocket == null) {
       throw new NullPointerException("Socket cannot be null");
     }
     socket = newSocket;
     try {
-      out = new ObjectOutputStream(socket.getOutputStream()); // always add before input stream, see http://stackoverflow.com/questions/8088557/getinputstream-blocks
-      in = new ObjectInputStream(socket.getInputStream());
+      socket.setTcpNoDelay(true);
       socket.setSoTimeout(50); // this practically makes reads non-blocking
+      socketOut = Channels.newChannel(socket.getOutputStream());
+      initBuffers();
+      // request binary protocol, and assume that the server supports it
+      codec = new BinaryMsgCodec();
+      awaitingHello = true;
+      writeFrame(BinaryMsgCodec.hello(BinaryMsgCodec.ProtocolVersion));
     }
     // pass exceptions onto caller
     catch (IOException ex) {
@@ -31,17 +116,68 @@ public class PlayerSocket {
     }
   }
 
+  /** constructor for player socket that uses a channel (used by server)
+      (reads and writes do not block if the channel is in non-blocking mode,
+       and nothing is sent until the client chooses a codec) */
+  public PlayerSocket(ByteChannel newChannel) {
+    if (newChannel == null) {
+      throw new NullPointerException("Channel cannot be null");
+    }
+    channel = newChannel;
+    initBuffers();
+  }
+
+  /** set up network buffers */
+  private void initBuffers() {
+    inBuffer = ByteBuffer.allocate(BufferSize);
+    outFrames = new ArrayDeque<QueuedFrame>();
+    gatherFrames = new ByteBuffer[MaxGatherFrames];
+    overflowPolicy = OverflowPolicy.Coalesce;
+  }
+
   /** read an object from input stream, returning null if no new message */
   public final Object read() {
+    byte[] frame;
+    Object msg;
     try {
-      return in.readObject();
-    }
-    // exceptions below are thrown when no new messages
-    catch (SocketTimeoutException ex) {
-      return null;
-    }
-    catch (OptionalDataException ex) {
-      return null;
+      while (true) {
+        if (codec == null && ObjectStreamReader.isStreamStart(inBuffer)) {
+          useObjectStream();
+        }
+        if (unframed) {
+          // pass all received bytes to the codec, which returns messages once they are complete
+          if ((msg = codec.decode(takeBytes())) != null) {
+            return msg;
+          }
+          if (endOfStream || !fill()) {
+            break;
+          }
+          continue;
+        }
+        frame = nextFrame();
+        if (frame == null) {
+          // no whole frame received yet, so check for more bytes from the network
+          if (endOfStream || !fill()) {
+            break;
+          }
+          continue;
+        }
+        if (codec == null) {
+          chooseCodec(frame);
+        }
+        else if (awaitingHello) {
+          if (BinaryMsgCodec.helloVersion(frame) < 0) {
+            throw new StreamCorruptedException("Server does not support binary protocol");
+          }
+          protocolVersion = BinaryMsgCodec.helloVersion(frame);
+          codec = new BinaryMsgCodec(protocolVersion); // server might use an older version
+          awaitingHello = false;
+        }
+        else if ((msg = codec.decode(frame)) != null) {
+          return msg;
+        }
+      }
+      return endOfStream ? new CloseConnectionMsg() : null;
     }
     // exceptions below are thrown when client disconnected
     catch (EOFException ex) {
@@ -50,6 +186,9 @@ public class PlayerSocket {
     catch (SocketException ex) {
       return new CloseConnectionMsg();
     }
+    catch (ClosedChannelException ex) {
+      return new CloseConnectionMsg();
+    }
     catch (StreamCorruptedException ex) {
       System.out.println("Input stream corrupted: " + ex.getMessage());
       return new CloseConnectionMsg();
@@ -63,11 +202,97 @@ public class PlayerSocket {
     }
   }
 
+  /** read available bytes from the network into input buffer,
+      returns whether any bytes were read */
+  private boolean fill() throws IOException {
+    int nRead;
+    if (!inBuffer.hasRemaining()) {
+      inBuffer = grow(inBuffer, inBuffer.capacity() * 2);
+    }
+    if (channel != null) {
+      nRead = channel.read(inBuffer);
+    }
+    else {
+      try {
+        nRead = socket.getInputStream().read(inBuffer.array(), inBuffer.position(), inBuffer.remaining());
+      }
+      catch (SocketTimeoutException ex) {
+        return false; // no new bytes
+      }
+      if (nRead > 0) {
+        inBuffer.position(inBuffer.position() + nRead);
+      }
+    }
+    if (nRead < 0) {
+      endOfStream = true;
+    }
+    return nRead > 0;
+  }
+
+  /** remove and return next whole frame from input buffer, or return null if no whole frame received yet */
+  private byte[] nextFrame() throws IOException {
+    byte[] ret;
+    int length;
+    if (inBuffer.position() < 4) {
+      return null;
+    }
+    length = inBuffer.getInt(0);
+    if (length < 0 || length > MaxFrameSize) {
+      throw new StreamCorruptedException("Invalid frame length " + length);
+    }
+    if (inBuffer.position() < 4 + length) {
+      if (inBuffer.capacity() < 4 + length) {
+        inBuffer = grow(inBuffer, 4 + length);
+      }
+      return null;
+    }
+    ret = new byte[length];
+    inBuffer.flip();
+    inBuffer.position(4);
+    inBuffer.get(ret);
+    inBuffer.compact();
+    inBuffer = shrink(inBuffer);
+    return ret;
+  }
+
+  /** remove and return all bytes in input buffer */
+  private byte[] takeBytes() {
+    byte[] ret = new byte[inBuffer.position()];
+    inBuffer.flip();
+    inBuffer.get(ret);
+    inBuffer.clear();
+    inBuffer = shrink(inBuffer);
+    return ret;
+  }
+
+  /** use codec requested by specified frame (which is the first frame the client sent) and reply to the client */
+  private void chooseCodec(byte[] frame) throws IOException {
+    int version = BinaryMsgCodec.helloVersion(frame);
+    if (version > 0) {
+      protocolVersion = Math.min(version, BinaryMsgCodec.ProtocolVersion);
+      codec = new BinaryMsgCodec(protocolVersion);
+      writeFrame(BinaryMsgCodec.hello(protocolVersion));
+    }
+    else {
+      throw new StreamCorruptedException("Unknown protocol requested");
+    }
+  }
+
+  /** use ObjectStreamCodec without frames, since the client started an object stream, and reply with our stream header */
+  private void useObjectStream() throws IOException {
+    ObjectStreamCodec objectCodec = new ObjectStreamCodec();
+    codec = objectCodec;
+    unframed = true;
+    writeFrame(objectCodec.getHeader());
+  }
+
   /** write specified object to output stream */
   public final void write(Object obj) {
     try {
-      out.writeObject(obj);
-      out.flush();
+      if (codec == null) {
+        throw new IOException("Client hasn't chosen a protocol yet");
+      }
+      queueMsgFrame(codec.encode(obj), isLobbyUpdate(obj));
     }
     // print error message if unknown error
     // (if I don't know what causes the error then I can't write code to handle it)
@@ -76,17 +301,361 @@ public class PlayerSocket {
     }
   }
 
+  /** write specified message, which is being sent to several clients,
+      using the frame it was already encoded to for other clients if possible */
+  public final void write(Broadcast broadcast) {
+    try {
+      if (codec == null) {
+        throw new IOException("Client hasn't chosen a protocol yet");
+      }
+      if (codec instanceof BinaryMsgCodec && !awaitingHello) {
+        queueFrame(new QueuedFrame(broadcast.frame(protocolVersion), true, isLobbyUpdate(broadcast.getMsg())), true);
+      }
+      else {
+        queueMsgFrame(broadcast.encode(codec), isLobbyUpdate(broadcast.getMsg()));
+      }
+    }
+    // print error message if unknown error
+    // (if I don't know what causes the error then I can't write code to handle it)
+    catch (IOException ex) {
+      System.out.println("Network write error: " + ex.toString());
+    }
+  }
+
+  /** returns whether specified message is made stale by the next update to the available games list */
+  private static boolean isLobbyUpdate(Object msg) {
+    return msg instanceof LobbyDeltaMsg || msg instanceof GameSessionListMsg;
+  }
+
+  /** send specified bytes as a single frame that can't be dropped (used for hello frames and stream headers) */
+  private void writeFrame(byte[] frame) throws IOException {
+    queueFrame(new QueuedFrame(unframed ? ByteBuffer.wrap(frame) : lengthPrefixed(frame), false, false), false);
+  }
+
+  /** send specified encoded message as a single frame, which is a lobby update if lobby is true
+      (frames can only be dropped from binary protocol streams, since those don't refer back to earlier frames) */
+  private void queueMsgFrame(byte[] frame, boolean lobby) throws IOException {
+    if (!unframed) {
+      checkFrameSize(frame);
+    }
+    queueFrame(new QueuedFrame(unframed ? ByteBuffer.wrap(frame) : lengthPrefixed(frame), codec instanceof BinaryMsgCodec, lobby), true);
+  }
+
+  /** throw exception if specified frame is too large for the other side to read
+      (the message isn't sent, but the connection stays open) */
+  static void checkFrameSize(byte[] frame) throws IOException {
+    if (frame.length > MaxFrameSize) {
+      throw new IOException("Message of " + frame.length + " bytes is too large to send in one frame");
+    }
+  }
+
+  /** returns buffer containing the length of specified frame followed by its bytes */
+  private static ByteBuffer lengthPrefixed(byte[] frame) {
+    ByteBuffer ret = ByteBuffer.allocate(4 + frame.length);
+    ret.putInt(frame.length);
+    ret.put(frame);
+    ret.flip();
+    return ret;
+  }
+
+  /** add specified frame to the frames waiting to be written, then start writing them unless batch is true and there is a FlushListener
+      (in which case they are written once flushBatch() is called), and handle the queue overflowing */
+  private synchronized void queueFrame(QueuedFrame frame, boolean batch) throws IOException {
+    long now;
+    if (evicted || closed) {
+      return; // client is being disconnected
+    }
+    outFrames.add(frame);
+    pendingBytes += frame.bytes.remaining();
+    if (batch && flushListener != null) {
+      now = System.nanoTime();
+      if (!flushPending) {
+        flushPending = true;
+        batchStartTime = now;
+        flushListener.flushNeeded(this);
+      }
+      else if (pendingBytes >= MaxFlushBytes || now - batchStartTime >= MaxFlushDelay * 1000000L) {
+        // don't make the oldest messages wait any longer
+        batchStartTime = now;
+        startWriting();
+      }
+    }
+    else {
+      startWriting();
+    }
+    maxQueuedFrames = Math.max(maxQueuedFrames, outFrames.size());
+    maxQueuedBytes = Math.max(maxQueuedBytes, pendingBytes);
+    if (outFrames.size() > MaxQueuedFrames || pendingBytes > MaxQueuedBytes) {
+      handleOverflow();
+    }
+  }
+
+  /** write all queued messages (called once the server is done handling a round of events, if there is a FlushListener) */
+  public final synchronized void flushBatch() {
+    flushPending = false;
+    try {
+      startWriting();
+    }
+    // print error message if unknown error
+    // (if I don't know what causes the error then I can't write code to handle it)
+    catch (IOException ex) {
+      System.out.println("Network write error: " + ex.toString());
+    }
+  }
+
+  /** write queued frames, or wake the writer thread to write them */
+  private void startWriting() throws IOException {
+    if (useWriterThread) {
+      notifyAll();
+    }
+    else {
+      flush();
+    }
+  }
+
+  /** drop frames according to the overflow policy, or evict the client if that doesn't make the queue fit */
+  private void handleOverflow() {
+    Iterator<QueuedFrame> it;
+    QueuedFrame frame;
+    QueuedFrame lastLobby = null;
+    int i = 0;
+    if (overflowPolicy == OverflowPolicy.Coalesce) {
+      for (QueuedFrame queued : outFrames) {
+        if (queued.lobby) {
+          lastLobby = queued;
+        }
+      }
+    }
+    if (overflowPolicy != OverflowPolicy.Disconnect) {
+      it = outFrames.iterator();
+      while (it.hasNext() && (outFrames.size() > MaxQueuedFrames || pendingBytes > MaxQueuedBytes)) {
+        frame = it.next();
+        if (i++ >= framesInFlight && frame.isDroppable()
+            && (overflowPolicy == OverflowPolicy.DropOldest || (frame.lobby && frame != lastLobby))) {
+          it.remove();
+          pendingBytes -= frame.bytes.remaining();
+          droppedFrames++;
+        }
+      }
+    }
+    if (outFrames.size() > MaxQueuedFrames || pendingBytes > MaxQueuedBytes) {
+      // client is too far behind, so stop sending to it and have it disconnected
+      evicted = true;
+      outFrames.clear();
+      pendingBytes = 0;
+      framesInFlight = 0;
+      if (slowConsumerListener != null) {
+        slowConsumerListener.slowConsumer(this);
+      }
+    }
+  }
+
+  /** write as many pending bytes to the network as possible without blocking
+      (if using a channel that isn't ready for all of them, the rest are written when the selector says it's writable) */
+  public final synchronized void flush() throws IOException {
+    long nWritten;
+    int nFrames;
+    try {
+      while (!outFrames.isEmpty()) {
+        nFrames = gatherFrames();
+        if (channel instanceof GatheringByteChannel) {
+          // write as many queued frames as possible with one system call
+          nWritten = ((GatheringByteChannel)channel).write(gatherFrames, 0, nFrames);
+        }
+        else {
+          nWritten = ((channel != null) ? channel : socketOut).write(gatherFrames[0]);
+        }
+        Arrays.fill(gatherFrames, 0, nFrames, null);
+        removeWritten(nWritten);
+        if (nWritten == 0) {
+          break; // channel can't take any more bytes right now
+        }
+      }
+    }
+    finally {
+      updateInterest();
+    }
+  }
+
+  /** wait until there are frames to write, then write them to the channel, blocking until they are written
+      (called repeatedly by the writer thread of a channel in blocking mode, so that the server thread never waits for the network),
+      returns false once the connection is closed */
+  public final boolean writeQueued() throws IOException, InterruptedException {
+    long nWritten;
+    int nFrames;
+    synchronized (this) {
+      while (outFrames.isEmpty() && !closed) {
+        wait();
+      }
+      if (closed) {
+        return false;
+      }
+      nFrames = gatherFrames();
+      framesInFlight = nFrames; // so that the frames aren't dropped while they are written
+    }
+    try {
+      nWritten = ((GatheringByteChannel)channel).write(gatherFrames, 0, nFrames);
+    }
+    finally {
+      synchronized (this) {
+        Arrays.fill(gatherFrames, 0, nFrames, null);
+        framesInFlight = 0;
+      }
+    }
+    synchronized (this) {
+      if (!evicted) {
+        removeWritten(nWritten);
+      }
+    }
+    return true;
+  }
+
+  /** put the first frames waiting to be written into gatherFrames, and return how many there are */
+  private int gatherFrames() {
+    int ret = 0;
+    for (QueuedFrame frame : outFrames) {
+      gatherFrames[ret++] = frame.bytes;
+      if (ret == gatherFrames.length) {
+        break;
+      }
+    }
+    return ret;
+  }
+
+  /** remove frames that have been completely written from the queue, given the number of bytes just written */
+  private void removeWritten(long nWritten) {
+    pendingBytes -= nWritten;
+    while (!outFrames.isEmpty() && !outFrames.peek().bytes.hasRemaining()) {
+      outFrames.poll();
+    }
+  }
+
+  /** returns whether there are bytes that haven't been written to the network yet */
+  public final synchronized boolean hasPendingWrites() {
+    return !outFrames.isEmpty();
+  }
+
+  /** have frames written by a writer thread that calls writeQueued(), instead of as soon as they are queued
+      (the channel must be a SocketChannel in blocking mode) */
+  public synchronized void useWriterThread() {
+    useWriterThread = true;
+  }
+
+  /** setter for what to do when the queue of frames waiting to be written is full */
+  public synchronized void setOverflowPolicy(OverflowPolicy policy) {
+    overflowPolicy = policy;
+  }
+
+  /** setter for listener that is told when messages are waiting for flushBatch()
+      (if null, messages are written as soon as they are queued) */
+  public synchronized void setFlushListener(FlushListener listener) {
+    flushListener = listener;
+  }
+
+  /** setter for listener that is told when this client must be disconnected because it fell behind */
+  public synchronized void setSlowConsumerListener(SlowConsumerListener listener) {
+    slowConsumerListener = listener;
+  }
+
+  /** returns whether this client fell too far behind reading its messages, so nothing more is sent to it */
+  public final synchronized boolean isEvicted() {
+    return evicted;
+  }
+
+  /** returns number of frames waiting to be written */
+  public final synchronized int getQueuedFrames() {
+    return outFrames.size();
+  }
+
+  /** returns number of bytes waiting to be written */
+  public final synchronized long getQueuedBytes() {
+    return pendingBytes;
+  }
+
+  /** returns most frames that were waiting to be written at once */
+  public final synchronized int getMaxQueuedFrames() {
+    return maxQueuedFrames;
+  }
+
+  /** returns most bytes that were waiting to be written at once */
+  public final synchronized long getMaxQueuedBytes() {
+    return maxQueuedBytes;
+  }
+
+  /** returns number of frames that were dropped because the queue was full */
+  public final synchronized long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  /** remember selection key that channel is registered with */
+  public void setSelectionKey(SelectionKey newKey) {
+    key = newKey;
+    updateInterest();
+  }
+
+  /** only ask selector to report channel as writable if there are pending bytes to write */
+  private void updateInterest() {
+    if (key != null && key.isValid()) {
+      key.interestOps(hasPendingWrites() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+  }
+
+  /** returns specified buffer, or a copy with the default capacity if it was grown for a large frame and is now mostly empty
+      (so that one large message doesn't keep a large buffer around for the rest of the connection) */
+  private static ByteBuffer shrink(ByteBuffer buffer) {
+    if (buffer.capacity() <= MaxIdleBufferSize || buffer.position() > BufferSize) {
+      return buffer;
+    }
+    ByteBuffer ret = ByteBuffer.allocate(BufferSize);
+    buffer.flip();
+    ret.put(buffer);
+    return ret;
+  }
+
+  /** returns copy of specified buffer with at least the specified capacity */
+  private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+    ByteBuffer ret = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+    buffer.flip();
+    ret.put(buffer);
+    return ret;
+  }
+
   /** close connection */
   public void close() {
     try {
-      out.writeObject(new CloseConnectionMsg());
-      out.flush();
+      write(new CloseConnectionMsg());
     }
     catch (Exception ex) {
       // ignore exceptions
     }
   }
 
+  /** release underlying socket or channel without notifying the other side
+      (the server calls this after the client sent a CloseConnectionMsg or disconnected) */
+  public void disconnect() {
+    synchronized (this) {
+      closed = true;
+      notifyAll(); // stop writer thread
+      if (codec instanceof ObjectStreamCodec) {
+        ((ObjectStreamCodec)codec).close(); // stop reader thread
+      }
+    }
+    try {
+      if (key != null) {
+        key.cancel();
+      }
+      if (channel != null) {
+        channel.close();
+      }
+      else {
+        socket.close();
+      }
+    }
+    catch (IOException ex) {
+      // ignore exceptions
+    }
+  }
+
   /** setter for player name
       (does not throw exception for invalid name
        because no player in player list would have such a name) */
@@ -98,4 +667,57 @@ public class PlayerSocket {
   public final String getPlayerName() {
     return playerName;
   }
+
+  /** setter for connection ID */
+  public void setId(int newId) {
+    id = newId;
+  }
+
+  /** getter for connection ID */
+  public final int getId() {
+    return id;
+  }
+
+  /** returns approximate number of bytes this connection keeps in memory,
+      including network buffers, unwritten frames, and previously written messages that the codec still refers to
+      (shared Broadcast frames are counted in full for every connection they are queued on) */
+  public final synchronized long getMemoryUsage() {
+    return inBuffer.capacity() + pendingBytes + (codec != null ? codec.getRetainedBytes() : 0);
+  }
+
+  /** returns description of the codec used with the other side, for log messages */
+  public final String getCodecDescription() {
+    if (codec instanceof ObjectStreamCodec) {
+      return "object stream, reset " + ((ObjectStreamCodec)codec).getResets() + " times";
+    }
+    if (codec instanceof BinaryMsgCodec) {
+      return "binary protocol v" + protocolVersion;
+    }
+    return "no protocol chosen";
+  }
+
+  /** returns version of binary protocol agreed on with the other side,
+      or 0 if using ObjectStreamCodec (or the client hasn't chosen a codec yet) */
+  public final int getProtocolVersion() {
+    return protocolVersion;
+  }
+
+  /** frame waiting to be written to the network */
+  private static class QueuedFrame {
+    private final ByteBuffer bytes; /**< length-prefixed frame (or part of an unframed object stream), with position at the first byte that hasn't been written */
+    private final boolean droppable; /**< whether the other side can still decode later frames if this one is dropped */
+    private final boolean lobby; /**< whether the frame is an update to the available games list */
+
+    /** constructor for queued frame */
+    public QueuedFrame(ByteBuffer newBytes, boolean newDroppable, boolean newLobby) {
+      bytes = newBytes;
+      droppable = newDroppable;
+      lobby = newLobby;
+    }
+
+    /** returns whether frame can be dropped, which also requires that none of it has been written yet */
+    public boolean isDroppable() {
+      return droppable && bytes.position() == 0;
+    }
+  }
 }
@@ -9,6 +9,59 @@ import java.util.*;
 
 /** networking message to update leaderboard */
 public class PlayerStatsMsg implements Serializable {
-  /** list containing all player information stored on server (with passwords removed) */
+  private static final long serialVersionUID = -6298112752498939945L;
+  private static final int MaxHeaderBytes = 1024; /**< upper bound on bytes that a leaderboard takes to encode besides its players (such as object stream class descriptors) */
+  private static final int MaxPlayerBytes = 32; /**< upper bound on bytes that each player takes to encode besides its name */
+
+  /** list containing all player information stored on server (with passwords removed),
+      or the players who won the most games if they wouldn't all fit in one frame */
   public ArrayList<PlayerData> players;
+
+  /** returns leaderboard listing specified players with passwords removed
+      (if they wouldn't all fit in a frame of PlayerSocket.MaxFrameSize bytes with any codec,
+       only as many of the players who won the most games as fit are listed) */
+  public static PlayerStatsMsg leaderboard(Iterable<PlayerData> players, int nPlayers) {
+    PlayerStatsMsg ret = new PlayerStatsMsg();
+    long size = MaxHeaderBytes;
+    int i;
+    ret.players = new ArrayList<PlayerData>(nPlayers);
+    for (PlayerData player : players) {
+      ret.players.add(new PlayerData(player.getName(), "\n", player.getGamesWon(), player.getGamesPlayed()));
+      size += maxEncodedSize(player);
+    }
+    if (size > PlayerSocket.MaxFrameSize) {
+      // keep the players who won the most games
+      Collections.sort(ret.players, new MostWins());
+      size = MaxHeaderBytes;
+      for (i = 0; i < ret.players.size() && size + maxEncodedSize(ret.players.get(i)) <= PlayerSocket.MaxFrameSize; i++) {
+        size += maxEncodedSize(ret.players.get(i));
+      }
+      ret.players.subList(i, ret.players.size()).clear();
+    }
+    return ret;
+  }
+
+  /** returns upper bound on number of bytes that specified player takes to encode in a leaderboard */
+  private static int maxEncodedSize(PlayerData player) {
+    String name = player.getName();
+    int ret = MaxPlayerBytes;
+    int i;
+    char ch;
+    // both codecs write names in modified UTF-8
+    for (i = 0; i < name.length(); i++) {
+      ch = name.charAt(i);
+      ret += (ch >= 1 && ch <= 0x7f) ? 1 : (ch <= 0x7ff) ? 2 : 3;
+    }
+    return ret;
+  }
+
+  /** orders players from most to fewest games won, then by fewest games played */
+  private static class MostWins implements Comparator<PlayerData> {
+    public int compare(PlayerData a, PlayerData b) {
+      if (a.getGamesWon() != b.getGamesWon()) {
+        return (a.getGamesWon() > b.getGamesWon()) ? -1 : 1;
+      }
+      return Integer.compare(a.getGamesPlayed(), b.getGamesPlayed());
+    }
+  }
 }
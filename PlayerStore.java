@@ -0,0 +1,43 @@
+// PlayerStore.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+
+/** interface for the collection of all player accounts, which saves changes to them
+    (PlayerData objects that a store returns must not be modified; call the store's methods to change players instead) */
+public interface PlayerStore extends Iterable<PlayerData> {
+  /** returns player with specified name, or null if there is no such player */
+  public PlayerData get(String name);
+
+  /** returns number of players */
+  public int size();
+
+  /** returns whether every player has been loaded
+      (until then, get() returns null for players who haven't been loaded yet) */
+  public boolean isLoaded();
+
+  /** create player with specified name and password who hasn't played any games */
+  public void create(String name, String password);
+
+  /** change password of specified player */
+  public void setPassword(String name, String password);
+
+  /** record that specified player won a game */
+  public void winGame(String name);
+
+  /** record that specified player lost a game or the game was a tie */
+  public void loseGame(String name);
+
+  /** delete specified player */
+  public void delete(String name);
+
+  /** save changes made since the last commit without waiting for the disk,
+      and tell specified listener (which may be null) once they are saved */
+  public void commit(PlayerJournal.CommitListener listener);
+
+  /** finish saving changes, then close files */
+  public void close() throws IOException;
+}
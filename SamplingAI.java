@@ -0,0 +1,406 @@
+// SamplingAI.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** AI for 2-player games that decides which card to play while the talon still has cards
+    by dealing the cards it hasn't seen at random many times (perfect information Monte Carlo)
+
+    Each sample deals the opponent's unknown cards and the face-down talon consistently with what the AI has seen (see CardTracker).
+    Each sample is then solved with every card known,
+    searching every way the rest of the current trick (or more tricks, including the talon cards each player draws) can be played,
+    and scoring the position after it by tricks won and the strength of each hand (see evaluate()).
+    The AI plays the card with the best average score over all the samples.
+    (Searching more than 1 trick plays worse, since each sample then knows the order of the face-down talon cards and plays to it.)
+
+    Samples can be solved in parallel on a ForkJoinPool (see Parallelism), and the card played only depends on the random number generator,
+    not on the number of threads or how they are scheduled.
+
+    Once the talon is empty, and in games with more than 2 players, it plays the same cards as HeuristicAI
+    (which solves the endgame exactly). */
+public class SamplingAI implements GameAI {
+  /** how the samples for each decision are split between threads */
+  public enum Parallelism {
+    /** deal and solve every sample in the thread that asks for a card */
+    Sequential,
+    /** split the samples into blocks, each dealt with its own random number generator and solved by its own task
+        (the blocks' generators are seeded from the AI's generator in order, so results only depend on its seed,
+         though they differ from Sequential) */
+    Root,
+    /** deal every sample in the thread that asks for a card, then solve each sample for each candidate card in parallel
+        (this deals the same samples as Sequential, so it plays the same cards, but the tasks are smaller) */
+    Leaf
+  }
+
+  public static final int DefaultSamples = 1000; /**< number of samples per decision if none is given */
+  public static final int DefaultSearchTricks = 1; /**< number of tricks searched in each sample if none is given */
+  private static final int TrickValue = 16; /**< score of winning a trick (scores are in 16ths of a trick) */
+  private static final int Infinity = 1 << 20; /**< more than any score */
+  private static final int RootBlockSamples = 32; /**< number of samples dealt and solved by each task when root-parallel */
+  private static final int LeafBlockSolves = 256; /**< number of times a sample is solved for a candidate card by each task when leaf-parallel */
+
+  private ShuffleRandom rand; /**< random number generator used to deal samples */
+  private int nSamples; /**< number of samples to solve per decision */
+  private int searchTricks; /**< number of tricks to search in each sample, including the current trick */
+  private boolean verbose; /**< whether to print the AI's reasoning to System.out */
+  private Parallelism parallelism; /**< how samples are split between threads */
+  private ForkJoinPool pool; /**< threads that solve samples, unless sequential */
+  private HeuristicAI fallback; /**< plays when sampling doesn't apply */
+  private GameEngine game; /**< game the AI is playing */
+  private int player; /**< player ID of the AI in the game */
+  private CardTracker tracker; /**< what the AI knows about the cards it can't see */
+  private Card.Suit trump; /**< trump suit of the game */
+  private SampleSolver solver; /**< deals and solves samples in the thread that asks for a card */
+  // the rest of the fields describe the decision being made, so tasks can read them
+  private long sampleHand; /**< CardSet of AI's hand */
+  private int sampleLeadCard; /**< card led to the current trick, or -1 if the AI leads */
+  private int[] candidateCards; /**< cards the AI may play */
+  private int nCandidates; /**< number of cards the AI may play */
+  private ShuffleRandom[] blockRands; /**< random number generator for each block when root-parallel */
+  private long[] oppHandSamples; /**< opponent's hand in each sample when leaf-parallel, as CardSets */
+  private int[] talonSamples; /**< order in which talon cards are drawn in each sample when leaf-parallel, one sample after another */
+  private long[][] blockScores; /**< sum of scores for each candidate card in each block of samples */
+  private long[] blockNodes; /**< number of positions searched in each block of samples */
+  private long nodes; /**< number of positions searched by the last decision */
+
+  /** constructor for AI that solves the default number of samples, dealt using specified random number generator */
+  public SamplingAI(ShuffleRandom newRand, boolean newVerbose) {
+    this(newRand, DefaultSamples, DefaultSearchTricks, newVerbose);
+  }
+
+  /** constructor for AI that solves specified number of samples per decision, searching specified number of tricks in each */
+  public SamplingAI(ShuffleRandom newRand, int newSamples, int newSearchTricks, boolean newVerbose) {
+    if (newSamples < 1 || newSearchTricks < 1) {
+      throw new IllegalArgumentException("Number of samples and tricks to search must both be positive");
+    }
+    rand = newRand;
+    nSamples = newSamples;
+    searchTricks = newSearchTricks;
+    verbose = newVerbose;
+    parallelism = Parallelism.Sequential;
+    fallback = new HeuristicAI(new Random(newRand.nextInt(Integer.MAX_VALUE)), newVerbose); // seeded by rand, so games replay exactly
+    tracker = new CardTracker();
+    solver = new SampleSolver();
+    candidateCards = new int[CardSet.NCards];
+  }
+
+  /** setter for how samples are split between threads, and the pool of threads that solve them (ignored if sequential) */
+  public void setParallelism(Parallelism newParallelism, ForkJoinPool newPool) {
+    parallelism = newParallelism;
+    pool = newPool;
+  }
+
+  public void newGame(GameEngine newGame, int newPlayer) {
+    game = newGame;
+    player = newPlayer;
+    trump = newGame.getTrump();
+    fallback.newGame(newGame, newPlayer);
+    tracker.newGame(newGame, newPlayer);
+  }
+
+  public void update() {
+    fallback.update();
+    tracker.update();
+  }
+
+  public int chooseCard() {
+    Deck hand = game.getPlayer(player).getHand();
+    Deck trick = game.getCurrentTrick();
+    Deck gameTalon = game.getTalon();
+    int[] candidates = new int[hand.size()];
+    long[] scores;
+    long startTime;
+    int nBlocks, best, i, j;
+    if (game.getNPlayers() != 2 || gameTalon.size() == 0) {
+      return fallback.chooseCard();
+    }
+    nCandidates = 0;
+    for (i = 0; i < hand.size(); i++) {
+      if (game.isValidPlay(i)) {
+        candidates[nCandidates] = i;
+        candidateCards[nCandidates++] = hand.getCard(i).getIndex();
+      }
+    }
+    if (nCandidates == 1) {
+      return candidates[0];
+    }
+    sampleHand = hand.getCardSet();
+    sampleLeadCard = (trick.size() == 0) ? -1 : trick.getCard(0).getIndex();
+    if (!tracker.isConsistent()) {
+      log("cards not seen don't match opponent's hand and talon, so can't sample");
+      return fallback.chooseCard();
+    }
+    // solve each sample for every candidate card
+    startTime = System.nanoTime();
+    if (parallelism == Parallelism.Sequential) {
+      nBlocks = 1;
+    }
+    else if (parallelism == Parallelism.Root) {
+      nBlocks = (nSamples + RootBlockSamples - 1) / RootBlockSamples;
+      blockRands = new ShuffleRandom[nBlocks];
+      for (i = 0; i < nBlocks; i++) {
+        blockRands[i] = new XoshiroRandom(((long)rand.nextInt(Integer.MAX_VALUE) << 31) ^ rand.nextInt(Integer.MAX_VALUE));
+      }
+    }
+    else {
+      nBlocks = (nSamples * nCandidates + LeafBlockSolves - 1) / LeafBlockSolves;
+      oppHandSamples = new long[nSamples];
+      talonSamples = new int[nSamples * gameTalon.size()];
+      for (i = 0; i < nSamples; i++) {
+        solver.deal(rand);
+        solver.save(i);
+      }
+    }
+    blockScores = new long[nBlocks][nCandidates];
+    blockNodes = new long[nBlocks];
+    if (parallelism == Parallelism.Sequential) {
+      solver.nodes = 0;
+      solver.solveSamples(rand, nSamples, blockScores[0]);
+      blockNodes[0] = solver.nodes;
+    }
+    else {
+      pool.invoke(new SolveTask(0, nBlocks));
+    }
+    // add up the blocks (in order, though sums of longs don't depend on the order anyway)
+    scores = new long[nCandidates];
+    nodes = 0;
+    for (i = 0; i < nBlocks; i++) {
+      for (j = 0; j < nCandidates; j++) {
+        scores[j] += blockScores[i][j];
+      }
+      nodes += blockNodes[i];
+    }
+    best = 0;
+    for (j = 0; j < nCandidates; j++) {
+      if (scores[j] > scores[best]) {
+        best = j;
+      }
+      log(hand.getCard(candidates[j]).getString() + " scores " + (double)scores[j] / nSamples / TrickValue + " tricks on average");
+    }
+    log("play " + hand.getCard(candidates[best]).getString() + " (solved " + nSamples + " samples in "
+        + (System.nanoTime() - startTime) / 1000000 + " ms, searching " + nodes + " positions)");
+    return candidates[best];
+  }
+
+  /** getter for number of positions searched by the last decision */
+  public final long getNodes() {
+    return nodes;
+  }
+
+  /** print specified message if the AI is verbose */
+  private void log(String msg) {
+    if (verbose) {
+      System.out.println(msg);
+    }
+  }
+
+  /** task that solves specified range of blocks of samples, splitting the range in half until there is 1 block per task */
+  private class SolveTask extends RecursiveAction {
+    private static final long serialVersionUID = -4127953826530914207L;
+
+    private int first; /**< index of first block to solve */
+    private int end; /**< index after last block to solve */
+
+    /** constructor for task that solves blocks from newFirst up to but not including newEnd */
+    public SolveTask(int newFirst, int newEnd) {
+      first = newFirst;
+      end = newEnd;
+    }
+
+    protected void compute() {
+      SampleSolver blockSolver;
+      int mid = (first + end) >>> 1;
+      if (end - first > 1) {
+        invokeAll(new SolveTask(first, mid), new SolveTask(mid, end));
+        return;
+      }
+      blockSolver = new SampleSolver();
+      if (parallelism == Parallelism.Root) {
+        blockSolver.solveSamples(blockRands[first], Math.min(RootBlockSamples, nSamples - first * RootBlockSamples), blockScores[first]);
+      }
+      else {
+        blockSolver.solveSaved(first * LeafBlockSolves, Math.min((first + 1) * LeafBlockSolves, nSamples * nCandidates), blockScores[first]);
+      }
+      blockNodes[first] = blockSolver.nodes;
+    }
+  }
+
+  /** deals samples of the decision being made and searches them (each thread solving samples needs its own) */
+  private class SampleSolver {
+    private long[] hands; /**< hands of the AI (index 0) and the opponent (index 1) in the sample being solved, as CardSets */
+    private int[] talon; /**< order in which talon cards are drawn in the sample being solved (the face-up card first) */
+    private int talonPos; /**< index in talon of next card to be drawn in the sample being solved */
+    private long talonSet; /**< CardSet of cards left in talon in the sample being solved */
+    private int talonLength; /**< number of cards in talon at the start of the sample being solved */
+    private int loaded; /**< index of saved sample that was last loaded, or -1 if none */
+    private long nodes; /**< number of positions searched */
+
+    /** constructor for sample solver */
+    public SampleSolver() {
+      hands = new long[2];
+      talon = new int[CardSet.NCards];
+      loaded = -1;
+    }
+
+    /** deal specified number of samples using specified random number generator,
+        and add the score of each candidate card in each sample to specified array */
+    public void solveSamples(ShuffleRandom sampleRand, int n, long[] scores) {
+      int i, j;
+      for (i = 0; i < n; i++) {
+        deal(sampleRand);
+        for (j = 0; j < nCandidates; j++) {
+          scores[j] += play(0, sampleLeadCard, candidateCards[j], -Infinity, Infinity, searchTricks);
+        }
+      }
+    }
+
+    /** solve saved samples for candidate cards from specified solve up to but not including specified end solve
+        (solve number i is saved sample i / nCandidates with candidate card i % nCandidates),
+        and add the scores to specified array */
+    public void solveSaved(int first, int end, long[] scores) {
+      int i;
+      for (i = first; i < end; i++) {
+        if (loaded != i / nCandidates) {
+          load(i / nCandidates);
+        }
+        scores[i % nCandidates] += play(0, sampleLeadCard, candidateCards[i % nCandidates], -Infinity, Infinity, searchTricks);
+      }
+    }
+
+    /** deal a sample consistent with what the AI knows, using specified random number generator */
+    public void deal(ShuffleRandom sampleRand) {
+      int i;
+      hands[0] = sampleHand;
+      hands[1] = tracker.dealOpponent(sampleRand, talon);
+      talonLength = tracker.getTalonSize();
+      talonSet = CardSet.Empty;
+      for (i = 0; i < talonLength; i++) {
+        talonSet |= 1L << talon[i];
+      }
+      talonPos = 0;
+    }
+
+    /** save the sample last dealt as specified saved sample */
+    public void save(int sample) {
+      oppHandSamples[sample] = hands[1];
+      System.arraycopy(talon, 0, talonSamples, sample * talonLength, talonLength);
+    }
+
+    /** load specified saved sample to be solved */
+    private void load(int sample) {
+      int i;
+      talonLength = talonSamples.length / nSamples;
+      hands[0] = sampleHand;
+      hands[1] = oppHandSamples[sample];
+      System.arraycopy(talonSamples, sample * talonLength, talon, 0, talonLength);
+      talonSet = CardSet.Empty;
+      for (i = 0; i < talonLength; i++) {
+        talonSet |= 1L << talon[i];
+      }
+      talonPos = 0;
+      loaded = sample;
+    }
+
+    /** returns score (for the AI) of best play from both players in the sample, with specified player to move
+        and the card led to the current trick as given (-1 if the player to move leads), searching specified number of tricks
+        (only exact within the window (alpha, beta)) */
+    private int search(int player, int leadCard, int alpha, int beta, int tricks) {
+      long candidates = hands[player];
+      int best = (player == 0) ? -Infinity : Infinity;
+      int value, card;
+      nodes++;
+      if (leadCard >= 0 && CardSet.hasSuit(candidates, CardSet.suitOf(leadCard))) {
+        candidates &= CardSet.suitMask(CardSet.suitOf(leadCard)); // must follow suit if possible
+      }
+      for (; candidates != 0; candidates &= ~(1L << card)) {
+        card = CardSet.highest(candidates);
+        value = play(player, leadCard, card, alpha, beta, tricks);
+        if (player == 0) {
+          best = Math.max(best, value);
+          alpha = Math.max(alpha, value);
+        }
+        else {
+          best = Math.min(best, value);
+          beta = Math.min(beta, value);
+        }
+        if (alpha >= beta) {
+          break;
+        }
+      }
+      return best;
+    }
+
+    /** returns search result after specified player plays specified card, given the card led to the current trick (-1 if leading) */
+    private int play(int player, int leadCard, int card, int alpha, int beta, int tricks) {
+      long cardBit = 1L << card;
+      long drawn;
+      int ret, winner, value;
+      hands[player] &= ~cardBit;
+      if (leadCard < 0) {
+        ret = search(1 - player, card, alpha, beta, tricks);
+      }
+      else {
+        // trick is complete, so its winner draws the top talon card, the loser draws the next one, and the winner leads the next trick
+        winner = beats(card, leadCard) ? player : 1 - player;
+        value = (winner == 0) ? TrickValue : -TrickValue;
+        drawn = (talonSet != 0) ? (1L << talon[talonPos]) | (1L << talon[talonPos + 1]) : CardSet.Empty;
+        if (drawn != 0) {
+          hands[winner] |= 1L << talon[talonPos];
+          hands[1 - winner] |= 1L << talon[talonPos + 1];
+          talonSet &= ~drawn;
+          talonPos += 2;
+        }
+        if (tricks == 1 || hands[winner] == 0) {
+          ret = value + evaluate();
+        }
+        else {
+          ret = value + search(winner, -1, alpha - value, beta - value, tricks - 1);
+        }
+        if (drawn != 0) {
+          talonPos -= 2;
+          hands[winner] &= ~drawn;
+          hands[1 - winner] &= ~drawn;
+          talonSet |= drawn;
+        }
+      }
+      hands[player] |= cardBit;
+      return ret;
+    }
+
+    /** returns score (for the AI) of the cards left in both hands in the sample, at the start of a trick:
+        each card scores the fraction of a trick it is likely to win, based on how many cards still in play of its suit are higher
+        (a trump is likely to win a trick even if it isn't high, since it can beat any card of another suit) */
+    private int evaluate() {
+      return strength(hands[0]) - strength(hands[1]);
+    }
+
+    /** returns strength of specified hand in the sample (see evaluate()) */
+    private int strength(long hand) {
+      long inPlay = hands[0] | hands[1] | talonSet;
+      int ret = 0;
+      int card, higher;
+      for (; hand != 0; hand &= hand - 1) {
+        card = CardSet.lowest(hand);
+        higher = Long.bitCount(inPlay & CardSet.suitMask(CardSet.suitOf(card)) & -(1L << (card + 1)));
+        if (CardSet.suitOf(card) == trump) {
+          ret += Math.max(TrickValue / 4, TrickValue - 2 * higher);
+        }
+        else {
+          ret += Math.max(0, TrickValue * 3 / 4 - TrickValue / 4 * higher);
+        }
+      }
+      return ret;
+    }
+
+    /** returns whether specified card played to a trick beats specified card led to it */
+    private boolean beats(int card, int leadCard) {
+      Card.Suit suit = CardSet.suitOf(card);
+      Card.Suit leadSuit = CardSet.suitOf(leadCard);
+      return (suit == leadSuit && card > leadCard) || (suit == trump && leadSuit != trump);
+    }
+  }
+}
@@ -14,19 +14,23 @@ public class SelectInputPane extends JScrollPane implements ActionListener {
   private final Color backColor; /**< background color of panel */
   private final Insets insets; /**< padding around laid out components */
   private final ActionListener action; /**< reference to action to perform when button clicked */
+  private JPanel innerPanel; /**< panel containing instruction and buttons */
+  private ArrayList<JButton> buttons; /**< button for each choice, in order */
 
   /** constructor for selection input pane */
   public SelectInputPane(ActionListener selectAction, Color newBackColor, Insets newInsets) {
     action = selectAction; // store reference to selection action
     backColor = newBackColor;
     insets = newInsets;
+    buttons = new ArrayList<JButton>();
   }
 
   /** re-layout the pane to display specified instruction and choices */
   public void update(String instruction, ArrayList<String> choices) {
     GridBagConstraints gbc = new GridBagConstraints();
     // reset inner panel
-    JPanel innerPanel = new JPanel();
+    innerPanel = new JPanel();
+    buttons.clear();
     setViewportView(innerPanel);
     // start setting up layout and constraints
     innerPanel.setBackground(backColor);
@@ -42,9 +46,50 @@ public class SelectInputPane extends JScrollPane implements ActionListener {
       gbc.gridy = i + 1;
       innerPanel.add(btnChoice, gbc);
       btnChoice.addActionListener(this); // register button listener
+      buttons.add(btnChoice);
     }
   }
 
+  /** insert button for specified choice at specified index, without re-creating the other buttons */
+  public void addChoice(int index, String choice) {
+    JButton btnChoice = new JButton(choice);
+    btnChoice.addActionListener(this); // register button listener
+    buttons.add(index, btnChoice);
+    innerPanel.add(btnChoice, choiceConstraints(index));
+    relayout(index + 1);
+  }
+
+  /** change text of choice at specified index */
+  public void setChoice(int index, String choice) {
+    buttons.get(index).setText(choice);
+  }
+
+  /** remove choice at specified index */
+  public void removeChoice(int index) {
+    innerPanel.remove(buttons.remove(index));
+    relayout(index);
+  }
+
+  /** move buttons starting at specified index to the rows matching their indices, then lay out pane again */
+  private void relayout(int start) {
+    GridBagLayout layout = (GridBagLayout)innerPanel.getLayout();
+    for (int i = start; i < buttons.size(); i++) {
+      layout.setConstraints(buttons.get(i), choiceConstraints(i));
+    }
+    innerPanel.revalidate();
+    innerPanel.repaint();
+  }
+
+  /** returns layout constraints for button of choice at specified index */
+  private GridBagConstraints choiceConstraints(int index) {
+    GridBagConstraints gbc = new GridBagConstraints();
+    gbc.weightx = 0.5;
+    gbc.insets = insets;
+    gbc.gridx = 0;
+    gbc.gridy = index + 1;
+    return gbc;
+  }
+
   /** called when button clicked, and triggers new action event containing clicked button's text */
   public void actionPerformed(ActionEvent ae) {
     if (ae.getSource() instanceof JButton) {
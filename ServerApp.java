@@ -6,175 +6,244 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /** class implementing a non-GUI server application to coordinate game client windows over a network */
 public class ServerApp {
   public static final int Port = 44247; /**< networking port that server listens on */
-  public static final int UpdateInterval = 200; /**< rate to poll for new messages, in milliseconds */
-  private static final String SettingsPath = "save/players.dat"; /**< file path of player data file */
-
-  /** server socket used to set up connections with clients */
-  private ServerSocket serverSocket;
-  /** ArrayList of clients connected to this server */
-  private ArrayList<PlayerSocket> clients;
-  /** ArrayList of all persistent player information */
-  private ArrayList<PlayerData> players;
-  /** ArrayList describing current game sessions */
-  private ArrayList<GameSession> games;
-
-  /** constructor for server application class */
-  public ServerApp() throws IOException {
-    int i;
+  public static final int UpdateInterval = 200; /**< rate for clients to poll for new messages, in milliseconds */
+  private static final long ConnectionStackSize = 64 * 1024; /**< stack size of connection threads if virtual threads are not available, in bytes */
+  private static final String SettingsPath = "save/players.dat"; /**< file path of player data snapshot */
+  private static final String JournalPath = "save/players.log"; /**< file path of journal of player data changes since the snapshot */
+  private static final String MappedRecordsPath = "save/players.map"; /**< file path of player records when using a MappedPlayerStore */
+  private static final String MappedIndexPath = "save/players.idx"; /**< file path of player index when using a MappedPlayerStore */
+  private static final String MappedJournalPath = "save/players.map.log"; /**< file path of journal of player changes when using a MappedPlayerStore */
+  private static final int MaxListedPlayers = 100; /**< player names are only printed once they are loaded if there are at most this many players */
+
+  /** server channel used to set up connections with clients */
+  private ServerSocketChannel serverChannel;
+  /** selector that wakes the server when a client connects, sends a message, or can be written to again
+      (only used by loop(), not by loopThreads()) */
+  private Selector selector;
+  /** queue of commands for the server thread to run, in order
+      (in loopThreads(), this is the only way that connection threads affect the client, player, and game lists,
+       and in both loops, this is how the player journal's writer thread replies to clients once their changes are saved) */
+  private LinkedBlockingQueue<Runnable> commands;
+  /** set of clients connected to this server, in the order they connected */
+  private LinkedHashSet<PlayerSocket> clients;
+  /** all persistent player information, indexed by player name */
+  private PlayerStore players;
+  /** set describing game sessions that haven't started yet, in the order they were hosted
+      (games that have started are only found through gamesByPlayer) */
+  private LinkedHashSet<GameSession> games;
+  /** index of clients that are signed in, by player name */
+  private HashMap<String, PlayerSocket> clientsByName;
+  /** set of clients that are signed in but haven't joined a game, which are sent the available games list */
+  private LinkedHashSet<PlayerSocket> lobbyClients;
+  /** index of game session that each player has joined, by player name */
+  private HashMap<String, GameSession> gamesByPlayer;
+  /** server's copy of each game that has started, which it uses to check plays and decide the result */
+  private HashMap<GameSession, GameEngine> gameEngines;
+  /** clients that were sent messages since the last call to flushClients(), which writes them all at once */
+  private ArrayList<PlayerSocket> flushClients;
+  /** adds clients to flushClients when they are sent messages */
+  private FlushScheduler flushScheduler;
+  /** ID to give to the next client that connects (only used in log messages) */
+  private int nextClientId;
+  /** ID to give to the next game that is hosted (used by clients to apply LobbyDeltaMsg) */
+  private int nextGameId;
+  /** version of available games list, which is incremented whenever a LobbyDeltaMsg is broadcast */
+  private int lobbyVersion;
+  /** what to do when a client falls too far behind reading its messages */
+  private PlayerSocket.OverflowPolicy overflowPolicy;
+  /** number of messages that were sent to several clients at once */
+  private long broadcasts;
+  /** number of times that broadcast messages didn't need to be encoded because the frame was shared with another client */
+  private long encodesSaved;
+  /** value of System.nanoTime() when the server started (used to report how long startup took) */
+  private long startTime;
+  /** value of System.nanoTime() when the server was ready to accept connections */
+  private long readyTime;
+
+  /** constructor for server application class
+      (if useMappedStore is true, players are kept in a MappedPlayerStore instead of in memory) */
+  public ServerApp(boolean useMappedStore) throws IOException {
+    long bindTime;
+    startTime = System.nanoTime();
     // initialize networking
     try {
-      serverSocket = new ServerSocket(Port);
-      serverSocket.setSoTimeout(1); // this practically makes accepting clients non-blocking
+      serverChannel = ServerSocketChannel.open();
+      serverChannel.socket().bind(new InetSocketAddress(Port));
     }
     catch (IOException ex) {
       throw ex;
     }
-    // instantiate lists
-    clients = new ArrayList<PlayerSocket>();
-    games = new ArrayList<GameSession>();
-    // load player data from file
-    loadSettings();
-    // list players
+    bindTime = System.nanoTime();
+    initLists();
+    // start loading player data from file (players are listed once they are loaded),
+    // and finish saving it when the server is closed
+    loadSettings(useMappedStore);
+    Runtime.getRuntime().addShutdownHook(new Thread(new SaveOnExit()));
+    readyTime = System.nanoTime();
     System.out.println("Server is ready; press ctrl+C to exit");
-    System.out.println("Players on this server:");
-    for (i = 0; i < players.size(); i++) {
-      System.out.println(players.get(i).getName());
+    System.out.println("Started in " + millis(readyTime - startTime) + " ms (binding port took " + millis(bindTime - startTime)
+                       + " ms, opening player files took " + millis(readyTime - bindTime) + " ms)");
+  }
+
+  /** returns specified number of nanoseconds in milliseconds, with 1 decimal place */
+  private static String millis(long nanos) {
+    return String.format("%.1f", nanos / 1e6);
+  }
+
+  /** constructor for server that uses specified players, and doesn't listen for connections or use the player data file
+      (used by benchmarks, which call addClient() and handleMessage() directly) */
+  ServerApp(ArrayList<PlayerData> newPlayers) {
+    HeapPlayerStore store = new HeapPlayerStore(null, null);
+    initLists();
+    try {
+      store.load(null, null);
+    }
+    catch (IOException ex) {
+      // can't happen when not using files
+    }
+    for (int i = 0; i < newPlayers.size(); i++) {
+      store.applyCreate(0, newPlayers.get(i)); // add player without journaling it
     }
-    System.out.println();
+    players = store;
+  }
+
+  /** instantiate lists and indexes */
+  private void initLists() {
+    clients = new LinkedHashSet<PlayerSocket>();
+    games = new LinkedHashSet<GameSession>();
+    clientsByName = new HashMap<String, PlayerSocket>();
+    lobbyClients = new LinkedHashSet<PlayerSocket>();
+    gamesByPlayer = new HashMap<String, GameSession>();
+    gameEngines = new HashMap<GameSession, GameEngine>();
+    flushClients = new ArrayList<PlayerSocket>();
+    flushScheduler = new FlushScheduler();
+    commands = new LinkedBlockingQueue<Runnable>();
+    overflowPolicy = PlayerSocket.OverflowPolicy.Coalesce;
   }
 
   public static void main(String[] args) {
     ServerApp app;
+    PlayerSocket.OverflowPolicy overflowPolicy = PlayerSocket.OverflowPolicy.Coalesce;
+    boolean useThreads = false;
+    boolean useMappedStore = false;
+    for (String arg : args) {
+      if (arg.equals("threads")) {
+        useThreads = true;
+      }
+      else if (arg.equals("mapped")) {
+        useMappedStore = true;
+      }
+      for (PlayerSocket.OverflowPolicy policy : PlayerSocket.OverflowPolicy.values()) {
+        if (arg.equalsIgnoreCase(policy.name())) {
+          overflowPolicy = policy;
+        }
+      }
+    }
     try {
-      app = new ServerApp();
+      app = new ServerApp(useMappedStore);
+      app.setOverflowPolicy(overflowPolicy);
     }
     catch (Exception ex) {
       System.out.println("Error initializing server:");
       ex.printStackTrace();
       return;
     }
-    app.loop();
+    if (useThreads) {
+      app.loopThreads();
+    }
+    else {
+      app.loop();
+    }
   }
 
-  /** check for and handle new messages from clients at fixed time intervals */
+  /** wait for clients to become ready and handle their messages as soon as they arrive */
   public void loop() {
-    int i;
+    Iterator<SelectionKey> keys;
+    SelectionKey key;
+    PlayerSocket client;
+    Object msgObj;
+    Runnable command;
     try {
-      while (true) { // loop exits when user presses ctrl+C
-        try {
-          // check for new clients
-          try {
-            Socket socket;
-            do {
-              socket = serverSocket.accept();
-              clients.add(new PlayerSocket(socket));
-              System.out.println(clientString(clients.size() - 1) + " has joined");
-            } while (socket != null);
+      selector = Selector.open();
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    catch (IOException ex) {
+      System.out.println("Error initializing selector:");
+      ex.printStackTrace();
+      return;
+    }
+    while (!Thread.currentThread().isInterrupted()) { // loop exits when user presses ctrl+C
+      try {
+        while ((command = commands.poll()) != null) {
+          command.run();
+        }
+        flushClients(); // write what the previous round of events and the commands sent, with one write per client
+        selector.select(); // block until at least one channel is ready or a command is posted
+        keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue; // client was removed while handling an earlier key
           }
-          catch (SocketTimeoutException ex) {
-            // ignore timeout
+          if (key.isAcceptable()) {
+            // check for new clients
+            acceptClients();
+            continue;
           }
-          // check for new messages from clients
-          for (i = 0; i < clients.size(); i++) {
-            Object msgObj = null;
+          client = (PlayerSocket)key.attachment();
+          if (key.isWritable()) {
+            // finish writing messages that didn't fit in the socket buffer earlier
+            client.flush();
+          }
+          if (key.isReadable()) {
+            // handle every whole message that has arrived from this client
             do {
-              msgObj = clients.get(i).read();
+              msgObj = client.read();
               if (msgObj != null) {
-                // received a message, handle it
-                //System.out.println("Received message from " + clientString(i) + ": " + msgObj);
-                if (msgObj instanceof CloseConnectionMsg) {
-                  // close connection with client
-                  // (but don't call clients.get(i).close() because client might still receive the message and get confused)
-                  leaveGame(i);
-                  System.out.println(clientString(i) + " has left");
-                  clients.remove(i);
-                  msgObj = null;
-                  i--;
-                }
-                else if (msgObj instanceof SignInMsg) {
-                  // sign in or create new player
-                  if (signIn(i, (SignInMsg)msgObj)) {
-                    broadcastGames();
-                  }
-                  else {
-                    System.out.println(clientString(i) + " unsuccessfully attempted to sign in");
-                  }
-                }
-                else if (msgObj instanceof PlayerStatsMsg) {
-                  // send updated leaderboard
-                  sendLeaderboard(i);
-                  System.out.println("Sent updated leaderboard to " + clientString(i));
-                }
-                else if (msgObj instanceof GameSessionMsg) {
-                  // join or leave game (before it starts)
-                  joinGame(i, ((GameSessionMsg)msgObj).toGameSession());
-                }
-                else if (msgObj instanceof StartGameMsg) {
-                  // start game that this client has joined
-                  if (startGame(i, (StartGameMsg)msgObj)) {
-                    System.out.println(clientString(i) + " started a game");
-                  }
-                  else {
-                    System.out.println(clientString(i) + " attempted to start a game at an invalid time");
-                  }
-                }
-                else if (msgObj instanceof GamePlayMsg) {
-                  // broadcast play to clients in a game
-                  // (note that the client program needs to know the many of the game rules anyway,
-                  //  such as whether a given card is a valid one to play and whether it's a valid time to play it,
-                  //  so there's no point duplicating the game logic on the server)
-                  broadcastPlay(i, (GamePlayMsg)msgObj);
-                  System.out.println(clientString(i) + " played a card");
-                }
-                else if (msgObj instanceof GameOverMsg) {
-                  // game ended, update player stats
-                  if (endGame(i, (GameOverMsg)msgObj)) {
-                    System.out.println("Game involving " + clientString(i) + " has ended");
-                  }
-                  else {
-                    System.out.println("Game involving " + clientString(i) + " has ended (duplicate message)");
-                  }
-                }
-                else if (msgObj instanceof StringMsg) {
-                  StringMsg msg = (StringMsg)msgObj;
-                  if (msg.type == StringMsg.MsgType.ChangePassword) {
-                    // change password
-                    if (changePassword(i, msg.message)) {
-                      System.out.println(clientString(i) + " changed account password");
-                    }
-                    else {
-                      System.out.println(clientString(i) + " unsuccessfully tried to change account password");
-                    }
-                  }
-                  else if (msg.type == StringMsg.MsgType.DeleteAccount) {
-                    // delete player account
-                    if (deleteAccount(i, msg.message)) {
-                      System.out.println(clientString(i) + " deleted player account");
-                    }
-                    else {
-                      System.out.println(clientString(i) + " unsuccessfully tried to delete player account");
-                    }
-                  }
-                  else {
-                    System.out.println("Warning: received StringMsg of unknown type " + msg.type.toString() + " from " + clientString(i));
-                  }
-                }
-                else {
-                  System.out.println("Warning: received unknown message from " + clientString(i) + ": " + msgObj);
-                }
+                handleMessage(client, msgObj);
               }
-            } while (msgObj != null);
+            } while (msgObj != null && !(msgObj instanceof CloseConnectionMsg));
           }
         }
-        catch (Exception ex) {
-          ex.printStackTrace();
-        }
-        Thread.sleep(UpdateInterval);
+      }
+      catch (Exception ex) {
+        ex.printStackTrace();
+      }
+    }
+    System.out.println("Closing server...");
+  }
+
+  /** service each client with its own thread doing blocking reads,
+      and handle their messages one at a time on this thread as soon as they arrive
+      (uses virtual threads if the JVM supports them, so idle connections are cheap) */
+  public void loopThreads() {
+    Thread acceptThread = new Thread(new ConnectionAcceptor(), "ConnectionAcceptor");
+    Runnable command;
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+    try {
+      while (true) { // loop exits when user presses ctrl+C
+        // run every command that has arrived, then write what they sent with one write per client
+        command = commands.take();
+        do {
+          try {
+            command.run();
+          }
+          catch (RuntimeException ex) {
+            ex.printStackTrace();
+          }
+        } while ((command = commands.poll()) != null);
+        flushClients();
       }
     }
     catch (InterruptedException ex) {
@@ -183,10 +252,156 @@ public class ServerApp {
     }
   }
 
+  /** returns new (unstarted) thread to service a single connection,
+      which is a virtual thread if the JVM supports them (Java 21 or later) and otherwise a daemon thread with a small stack */
+  private static Thread newConnectionThread(Runnable task) {
+    Thread thread;
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (Thread)Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class).invoke(builder, task);
+    }
+    catch (Exception ex) {
+      // virtual threads not available
+    }
+    thread = new Thread(null, task, "PlayerConnection", ConnectionStackSize);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /** accept all clients that are waiting to connect */
+  private void acceptClients() throws IOException {
+    SocketChannel channel;
+    PlayerSocket client;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      client = new PlayerSocket(channel);
+      client.setSelectionKey(channel.register(selector, SelectionKey.OP_READ, client));
+      addClient(client);
+    }
+  }
+
+  /** setter for what to do when a client falls too far behind reading its messages (applies to clients that connect later) */
+  public void setOverflowPolicy(PlayerSocket.OverflowPolicy policy) {
+    overflowPolicy = policy;
+  }
+
+  /** add newly connected client to clients list */
+  void addClient(PlayerSocket client) {
+    client.setOverflowPolicy(overflowPolicy);
+    client.setSlowConsumerListener(new SlowConsumerEviction());
+    client.setFlushListener(flushScheduler);
+    client.setId(nextClientId++);
+    clients.add(client);
+    System.out.println(clientString(client) + " has joined");
+  }
+
+  /** handle a message received from specified client
+      (package-private so that benchmarks can drive the server without a network) */
+  void handleMessage(PlayerSocket client, Object msgObj) {
+    if (!clients.contains(client)) {
+      return; // client has already left
+    }
+    //System.out.println("Received message from " + clientString(client) + ": " + msgObj);
+    if (msgObj instanceof CloseConnectionMsg) {
+      // close connection with client
+      // (don't send the client a message because client might still receive the message and get confused)
+      leaveGame(client);
+      System.out.println(clientString(client) + " has left (" + client.getCodecDescription() + ", connection was keeping about "
+                         + client.getMemoryUsage() + " bytes in memory)");
+      if (client.getDroppedFrames() > 0) {
+        System.out.println("  (" + client.getDroppedFrames() + " messages to " + clientString(client) + " were dropped because it fell behind, and at most "
+                           + client.getMaxQueuedFrames() + " messages totaling " + client.getMaxQueuedBytes() + " bytes were waiting to be sent)");
+      }
+      clients.remove(client);
+      lobbyClients.remove(client);
+      if (client.getPlayerName() != null && clientsByName.get(client.getPlayerName()) == client) {
+        clientsByName.remove(client.getPlayerName());
+      }
+      client.disconnect();
+    }
+    else if (msgObj instanceof SignInMsg) {
+      // sign in or create new player
+      if (!signIn(client, (SignInMsg)msgObj)) {
+        System.out.println(clientString(client) + " unsuccessfully attempted to sign in");
+      }
+    }
+    else if (msgObj instanceof PlayerStatsMsg) {
+      // send updated leaderboard
+      sendLeaderboard(client);
+      System.out.println("Sent updated leaderboard to " + clientString(client));
+    }
+    else if (msgObj instanceof GameSessionListMsg) {
+      // client missed a change to available games, so send whole list again
+      if (lobbyClients.contains(client)) {
+        sendGames(client);
+      }
+    }
+    else if (msgObj instanceof GameSessionMsg) {
+      // join or leave game (before it starts)
+      joinGame(client, ((GameSessionMsg)msgObj).toGameSession());
+    }
+    else if (msgObj instanceof StartGameMsg) {
+      // start game that this client has joined
+      if (startGame(client, (StartGameMsg)msgObj)) {
+        System.out.println(clientString(client) + " started a game");
+      }
+      else {
+        System.out.println(clientString(client) + " attempted to start a game at an invalid time");
+      }
+    }
+    else if (msgObj instanceof GamePlayMsg) {
+      // check play against server's copy of the game, then broadcast it to clients in the game
+      if (playCard(client, (GamePlayMsg)msgObj)) {
+        System.out.println(clientString(client) + " played a card");
+      }
+      else {
+        System.out.println(clientString(client) + " attempted to play an invalid card");
+      }
+    }
+    else if (msgObj instanceof GameOverMsg) {
+      // game stopped before completion
+      // (games played to completion end as soon as the server sees the last card played,
+      //  so clients saying that a game was completed are sending a duplicate message)
+      if (!((GameOverMsg)msgObj).complete && stopGame(client)) {
+        System.out.println("Game involving " + clientString(client) + " was stopped");
+      }
+      else {
+        System.out.println("Game involving " + clientString(client) + " has ended (duplicate message)");
+      }
+    }
+    else if (msgObj instanceof StringMsg) {
+      StringMsg msg = (StringMsg)msgObj;
+      if (msg.type == StringMsg.MsgType.ChangePassword) {
+        // change password
+        if (changePassword(client, msg.message)) {
+          System.out.println(clientString(client) + " changed account password");
+        }
+        else {
+          System.out.println(clientString(client) + " unsuccessfully tried to change account password");
+        }
+      }
+      else if (msg.type == StringMsg.MsgType.DeleteAccount) {
+        // delete player account
+        if (deleteAccount(client, msg.message)) {
+          System.out.println(clientString(client) + " deleted player account");
+        }
+        else {
+          System.out.println(clientString(client) + " unsuccessfully tried to delete player account");
+        }
+      }
+      else {
+        System.out.println("Warning: received StringMsg of unknown type " + msg.type.toString() + " from " + clientString(client));
+      }
+    }
+    else {
+      System.out.println("Warning: received unknown message from " + clientString(client) + ": " + msgObj);
+    }
+  }
+
   /** sign in or create new player (returns whether sign in was successful) */
-  private boolean signIn(int clientIndex, SignInMsg msg) {
-    PlayerSocket client = clients.get(clientIndex);
-    int i;
+  private boolean signIn(PlayerSocket client, SignInMsg msg) {
+    PlayerData player;
     if (msg.newPlayer) {
       // create new player
       if (!PlayerData.isValidName(msg.playerName)) {
@@ -194,43 +409,60 @@ public class ServerApp {
         client.write(new StringMsg(StringMsg.MsgType.SignInError, "Invalid player name"));
         return false;
       }
-      for (i = 0; i < players.size(); i++) {
-        if (players.get(i).getName().equals(msg.playerName)) {
-          // another player has this name, reject new player request
-          client.write(new StringMsg(StringMsg.MsgType.SignInError, "There is already a player named \"" + msg.playerName + "\""));
-          return false;
-        }
+      if (isLengthLimited() && msg.playerName.length() > PlayerData.MaxNameLength) {
+        // player name doesn't fit in player store, reject new player request
+        client.write(new StringMsg(StringMsg.MsgType.SignInError, "Player name may be at most " + PlayerData.MaxNameLength + " characters"));
+        return false;
+      }
+      if (!players.isLoaded()) {
+        // can't tell whether name is taken yet, reject new player request
+        client.write(new StringMsg(StringMsg.MsgType.SignInError, "The server is still loading players, please try again in a moment"));
+        return false;
+      }
+      if (players.get(msg.playerName) != null) {
+        // another player has this name, reject new player request
+        client.write(new StringMsg(StringMsg.MsgType.SignInError, "There is already a player named \"" + msg.playerName + "\""));
+        return false;
       }
       if (msg.password.isEmpty()) {
         // password is empty, reject new player request
         client.write(new StringMsg(StringMsg.MsgType.SignInError, "Password may not be empty"));
         return false;
       }
+      if (isLengthLimited() && msg.password.length() > PlayerData.MaxPasswordLength) {
+        // password doesn't fit in player store, reject new player request
+        client.write(new StringMsg(StringMsg.MsgType.SignInError, "Password may be at most " + PlayerData.MaxPasswordLength + " characters"));
+        return false;
+      }
       // input is acceptable, create new player and save settings
-      players.add(new PlayerData(msg.playerName, msg.password, 0, 0));
-      saveSettings();
-      client.setPlayerName(msg.playerName);
-      client.write(new StringMsg(StringMsg.MsgType.SignInSuccess, msg.playerName));
-      System.out.println(clientString(clientIndex) + " signed in to new player \"" + msg.playerName + "\"");
+      players.create(msg.playerName, msg.password);
+      setClientPlayer(client, msg.playerName);
+      // tell client once player is saved
+      players.commit(new SaveReply(client, new StringMsg(StringMsg.MsgType.SignInSuccess, msg.playerName),
+                                   new StringMsg(StringMsg.MsgType.SignInError, "The server could not save your new player, please try again later"), msg.playerName));
+      System.out.println(clientString(client) + " signed in to new player \"" + msg.playerName + "\"");
       return true;
     }
     else {
       // sign in to existing player
-      for (i = 0; i < clients.size(); i++) {
-        if (clients.get(i).getPlayerName() != null && clients.get(i).getPlayerName().equals(msg.playerName)) {
-          // another user is logged on to this player, reject sign in request
-          client.write(new StringMsg(StringMsg.MsgType.SignInError, "Another user is signed in to this player"));
-          return false;
-        }
+      if (clientsByName.containsKey(msg.playerName)) {
+        // another user is logged on to this player, reject sign in request
+        client.write(new StringMsg(StringMsg.MsgType.SignInError, "Another user is signed in to this player"));
+        return false;
       }
-      for (i = 0; i < players.size(); i++) {
-        if (players.get(i).signInMatch(msg.playerName, msg.password)) {
-          // found matching credentials, complete successful sign in
-          client.setPlayerName(msg.playerName);
-          client.write(new StringMsg(StringMsg.MsgType.SignInSuccess, msg.playerName));
-          System.out.println(clientString(clientIndex) + " signed in to existing player \"" + msg.playerName + "\"");
-          return true;
-        }
+      player = playerNamed(msg.playerName);
+      if (player != null && player.signInMatch(msg.playerName, msg.password)) {
+        // found matching credentials, complete successful sign in
+        setClientPlayer(client, msg.playerName);
+        client.write(new StringMsg(StringMsg.MsgType.SignInSuccess, msg.playerName));
+        updateLobby(client);
+        System.out.println(clientString(client) + " signed in to existing player \"" + msg.playerName + "\"");
+        return true;
+      }
+      if (player == null && !players.isLoaded()) {
+        // player might not be loaded yet, reject sign in request
+        client.write(new StringMsg(StringMsg.MsgType.SignInError, "The server is still loading players, please try again in a moment"));
+        return false;
       }
       // didn't find any matching credentials, reject sign in request
       client.write(new StringMsg(StringMsg.MsgType.SignInError, "The player name or password you entered is incorrect"));
@@ -238,146 +470,302 @@ public class ServerApp {
     }
   }
 
-  /** send updated leaderboard to specified client */
-  private void sendLeaderboard(int clientIndex) {
-    PlayerStatsMsg msgOut = new PlayerStatsMsg();
-    msgOut.players = new ArrayList<PlayerData>();
-    for (int i = 0; i < players.size(); i++) {
-      // add players to list with passwords removed
-      msgOut.players.add(new PlayerData(players.get(i).getName(), "\n", players.get(i).getGamesWon(), players.get(i).getGamesPlayed()));
+  /** associate specified client with specified player name
+      (the client is removed from the lobby until updateLobby() is called after telling it that it signed in) */
+  private void setClientPlayer(PlayerSocket client, String name) {
+    if (client.getPlayerName() != null && clientsByName.get(client.getPlayerName()) == client) {
+      clientsByName.remove(client.getPlayerName());
     }
-    clients.get(clientIndex).write(msgOut);
+    client.setPlayerName(name);
+    clientsByName.put(name, client);
+    lobbyClients.remove(client);
   }
 
-  /** broadcast available game sessions to all non-playing clients */
-  private void broadcastGames() {
-    PlayerData player;
-    GameSession game;
-    int i;
-    // prepare message
+  /** add specified client to lobby if it hasn't joined a game, otherwise remove it from lobby
+      (clients that newly enter the lobby are sent the whole available games list) */
+  private void updateLobby(PlayerSocket client) {
+    if (client != null && client.getPlayerName() != null && playerGame(client.getPlayerName()) == null) {
+      if (lobbyClients.add(client)) {
+        sendGames(client);
+      }
+    }
+    else {
+      lobbyClients.remove(client);
+    }
+  }
+
+  /** send updated leaderboard to specified client
+      (which only lists the players who won the most games if there are too many to send in one frame) */
+  private void sendLeaderboard(PlayerSocket client) {
+    client.write(PlayerStatsMsg.leaderboard(players, players.size()));
+  }
+
+  /** returns whether specified game is shown in the available games list */
+  private boolean isListed(GameSession game) {
+    return games.contains(game) && game.players.size() < GameEngine.MaxPlayers;
+  }
+
+  /** returns message listing all available game sessions */
+  private GameSessionListMsg gamesList() {
     GameSessionListMsg msg = new GameSessionListMsg();
+    int i = 0;
     msg.games = new ArrayList<GameSessionMsg>();
-    for (i = 0; i < games.size(); i++) {
-      if (!games.get(i).playing && games.get(i).players.size() < GamePanel.MaxPlayers) {
-        msg.games.add(new GameSessionMsg(games.get(i)));
-      }
-    }
-    //System.out.println("msg.games.size " + msg.games.size());
-    // broadcast message
-    for (i = 0; i < clients.size(); i++) {
-      if (clients.get(i).getPlayerName() != null) {
-        game = playerGame(clients.get(i).getPlayerName());
-        if (game == null) {
-          // player hasn't joined game, send list of all games
-          clients.get(i).write(msg);
-        }
-        else if (!game.playing) {
-          // player has joined game, send that game only
-          clients.get(i).write(new GameSessionMsg(game));
-          //System.out.println("game.players.size " + game.players.size());
+    for (GameSession game : games) {
+      if (game.players.size() < GameEngine.MaxPlayers) {
+        msg.games.add(new GameSessionMsg(game));
+      }
+    }
+    msg.version = lobbyVersion;
+    msg.gameIds = new int[msg.games.size()];
+    for (GameSession game : games) {
+      if (game.players.size() < GameEngine.MaxPlayers) {
+        msg.gameIds[i++] = game.id;
+      }
+    }
+    return msg;
+  }
+
+  /** send whole available games list to specified client */
+  private void sendGames(PlayerSocket client) {
+    client.write(gamesList());
+  }
+
+  /** tell players in specified game who is in it, and tell clients in the lobby how it changed
+      (wasListed is whether the game was in the available games list before the change,
+       and player is the name of the player who joined or left the game)
+      (takes time proportional to the number of clients in the lobby and players in the game, not the number of games) */
+  private void broadcastGame(GameSession game, boolean wasListed, String player, boolean joined) {
+    LobbyDeltaMsg delta = new LobbyDeltaMsg();
+    boolean listed = isListed(game);
+    int i;
+    if (!game.playing) {
+      // players who have joined a game are sent that game only
+      Broadcast gameMsg = new Broadcast(new GameSessionMsg(game));
+      for (i = 0; i < game.players.size(); i++) {
+        clientNamed(game.players.get(i)).write(gameMsg);
+      }
+      countBroadcast(gameMsg);
+    }
+    delta.players = new ArrayList<String>();
+    if (wasListed && listed) {
+      delta.type = joined ? LobbyDeltaMsg.DeltaType.PlayerJoined : LobbyDeltaMsg.DeltaType.PlayerLeft;
+      delta.players.add(player);
+    }
+    else if (listed) {
+      delta.type = LobbyDeltaMsg.DeltaType.GameAdded;
+      delta.players.addAll(game.players);
+    }
+    else if (wasListed) {
+      delta.type = LobbyDeltaMsg.DeltaType.GameRemoved;
+    }
+    else {
+      return; // change isn't visible in the lobby
+    }
+    delta.gameId = game.id;
+    delta.version = ++lobbyVersion;
+    broadcastLobby(delta);
+  }
+
+  /** send specified change to available games to all clients in the lobby
+      (clients that don't support LobbyDeltaMsg are sent the whole list instead, which is only prepared once) */
+  private void broadcastLobby(LobbyDeltaMsg delta) {
+    Broadcast deltaMsg = new Broadcast(delta);
+    Broadcast listMsg = null;
+    GameSessionListMsg list;
+    for (PlayerSocket client : lobbyClients) {
+      if (client.getProtocolVersion() >= LobbyDeltaMsg.MinProtocolVersion) {
+        client.write(deltaMsg);
+      }
+      else {
+        if (listMsg == null) {
+          list = gamesList();
+          list.gameIds = null;
+          listMsg = new Broadcast(list);
         }
+        client.write(listMsg);
       }
     }
+    countBroadcast(deltaMsg);
+    if (listMsg != null) {
+      countBroadcast(listMsg);
+    }
+  }
+
+  /** write all messages that were sent to clients since this was last called
+      (package-private so that benchmarks can choose how many events to handle between flushes) */
+  void flushClients() {
+    for (int i = 0; i < flushClients.size(); i++) {
+      flushClients.get(i).flushBatch();
+    }
+    flushClients.clear();
+  }
+
+  /** add specified broadcast (which was already sent) to the counts of broadcasts and encodes saved */
+  private void countBroadcast(Broadcast broadcast) {
+    broadcasts++;
+    encodesSaved += broadcast.getEncodesSaved();
+  }
+
+  /** getter for number of messages that were sent to several clients at once
+      (package-private so that benchmarks can report it) */
+  final long getBroadcasts() {
+    return broadcasts;
+  }
+
+  /** getter for number of times that broadcast messages didn't need to be encoded again
+      (package-private so that benchmarks can report it) */
+  final long getEncodesSaved() {
+    return encodesSaved;
   }
 
   /** let specified client join (or leave) specified game */
-  private void joinGame(int clientIndex, GameSession msg) {
-    PlayerSocket client = clients.get(clientIndex);
+  private void joinGame(PlayerSocket client, GameSession msg) {
     GameSession game;
+    boolean wasListed;
     if (client.getPlayerName() != null) {
+      // take client out of lobby while the games change (it's sent the whole list if it ends up back in the lobby)
+      lobbyClients.remove(client);
       // remove this player from current game (if any)
       game = playerGame(client.getPlayerName());
       if (game != null && !game.playing) {
+        wasListed = isListed(game);
         game.players.remove(client.getPlayerName());
+        gamesByPlayer.remove(client.getPlayerName());
         if (game.players.isEmpty()) {
           games.remove(game);
         }
-        System.out.println(clientString(clientIndex) + " left a game");
+        broadcastGame(game, wasListed, client.getPlayerName(), false);
+        System.out.println(clientString(client) + " left a game");
       }
       // if leaving game then done, otherwise add to specified game
       if (msg.playing) {
         if (msg.players == null || msg.players.isEmpty()) {
           // create new game and add player to it
           game = new GameSession();
+          game.id = nextGameId++;
           game.players.add(client.getPlayerName());
+          gamesByPlayer.put(client.getPlayerName(), game);
           games.add(game);
-          System.out.println(clientString(clientIndex) + " hosted a new game");
+          broadcastGame(game, false, client.getPlayerName(), true);
+          System.out.println(clientString(client) + " hosted a new game");
         }
         else {
           // try to join existing game
           for (int i = 0; i < msg.players.size(); i++) {
             game = playerGame(msg.players.get(i));
-            if (game != null && !game.playing && game.players.size() < GamePanel.MaxPlayers) {
+            if (game != null && !game.playing && game.players.size() < GameEngine.MaxPlayers) {
+              wasListed = isListed(game);
               game.players.add(client.getPlayerName());
-              System.out.println(clientString(clientIndex) + " joined game containing player \"" + msg.players.get(i) + "\"");
+              gamesByPlayer.put(client.getPlayerName(), game);
+              broadcastGame(game, wasListed, client.getPlayerName(), true);
+              System.out.println(clientString(client) + " joined game containing player \"" + msg.players.get(i) + "\"");
               break;
             }
           }
         }
       }
-      broadcastGames();
+      updateLobby(client);
     }
   }
 
   /** start game that specified client has joined, returns whether succeeded */
-  private boolean startGame(int clientIndex, StartGameMsg msg) {
+  private boolean startGame(PlayerSocket client, StartGameMsg msg) {
     StartGameMsg msgOut = new StartGameMsg();
-    GameSession game = playerGame(clients.get(clientIndex).getPlayerName());
-    if (game == null || game.playing) {
+    Broadcast startMsg;
+    GameSession game = playerGame(client.getPlayerName());
+    boolean wasListed;
+    if (game == null || game.playing || game.players.size() < GameEngine.MinPlayers) {
       return false;
     }
+    wasListed = isListed(game);
     game.playing = true;
+    games.remove(game);
+    gameEngines.put(game, new GameEngine(game.players, msg.seed)); // deals the same cards as the clients
     // broadcast start game message to all players in this game
     msgOut.seed = msg.seed; // setting random number seed ensures clients generate the same game
     msgOut.players = new GameSessionMsg(game);
+    startMsg = new Broadcast(msgOut);
     for (int i = 0; i < game.players.size(); i++) {
-      clientNamed(game.players.get(i)).write(msgOut);
+      clientNamed(game.players.get(i)).write(startMsg);
     }
-    // broadcast updated available games list to everyone else
-    broadcastGames();
+    countBroadcast(startMsg);
+    // tell everyone else that game is no longer available
+    broadcastGame(game, wasListed, client.getPlayerName(), false);
     return true;
   }
 
-  /** broadcast play to all clients in game, except the client who played */
-  private void broadcastPlay(int clientIndex, GamePlayMsg msg) {
-    GameSession game = playerGame(clients.get(clientIndex).getPlayerName());
-    PlayerSocket client;
-    if (game != null && game.playing) {
-      for (int i = 0; i < game.players.size(); i++) {
-        if (!clients.get(clientIndex).getPlayerName().equals(game.players.get(i))) {
-          clientNamed(game.players.get(i)).write(msg);
-        }
+  /** play card for specified client in server's copy of its game, and broadcast the play if it was valid
+      (then end the game if that was the last card), returns whether the play was valid
+      (if the client is in a game but the play isn't valid, the game is stopped) */
+  private boolean playCard(PlayerSocket client, GamePlayMsg msg) {
+    GameSession game = playerGame(client.getPlayerName());
+    GameEngine engine = (game != null) ? gameEngines.get(game) : null;
+    if (engine == null) {
+      return false; // not in a game that has started
+    }
+    if (!engine.getPlayer(engine.getActivePlayer()).getName().equals(client.getPlayerName()) || !engine.play(msg.card)) {
+      // not this player's turn or card can't be played, so the client's copy of the game doesn't match the server's
+      // (stopping the game sends its players the available games list, which makes their clients stop the game too)
+      System.out.println("Game involving " + clientString(client) + " was stopped because the client's copy of the game is out of sync");
+      endGame(game, false);
+      return false;
+    }
+    broadcastPlay(client, game, msg);
+    if (engine.getGameOver()) {
+      System.out.println("Game involving " + clientString(client) + " has ended, "
+                         + (engine.getFinalWinnerTie() ? "and it was a draw" : "and " + engine.getPlayer(engine.getFinalWinner()).getName() + " won"));
+      endGame(game, true);
+    }
+    return true;
+  }
+
+  /** broadcast play to all clients in specified game, except the client who played */
+  private void broadcastPlay(PlayerSocket client, GameSession game, GamePlayMsg msg) {
+    Broadcast playMsg = new Broadcast(msg);
+    for (int i = 0; i < game.players.size(); i++) {
+      if (!client.getPlayerName().equals(game.players.get(i))) {
+        clientNamed(game.players.get(i)).write(playMsg);
       }
     }
+    countBroadcast(playMsg);
   }
 
-  /** handle a game ending, returns whether succeeded */
-  private boolean endGame(int clientIndex, GameOverMsg msg) {
-    GameSession game = playerGame(clients.get(clientIndex).getPlayerName());
-    int i;
+  /** stop game that specified client is playing before it is complete, returns whether succeeded */
+  private boolean stopGame(PlayerSocket client) {
+    GameSession game = playerGame(client.getPlayerName());
     if (game == null || !game.playing) {
       return false;
     }
-    if (msg.complete) {
-      // game played to completion, so update player stats
+    endGame(game, false);
+    return true;
+  }
+
+  /** handle specified game ending, and update player stats if it was played to completion */
+  private void endGame(GameSession game, boolean complete) {
+    GameEngine engine = gameEngines.remove(game);
+    int i;
+    if (complete) {
+      // game played to completion, so update player stats with result from server's copy of the game
       for (i = 0; i < game.players.size(); i++) {
-        if (msg.tie || i != msg.winner) {
-          playerNamed(game.players.get(i)).loseGame();
+        if (engine.getFinalWinnerTie() || i != engine.getFinalWinner()) {
+          players.loseGame(game.players.get(i));
         }
         else {
-          playerNamed(game.players.get(i)).winGame();
+          players.winGame(game.players.get(i));
         }
       }
-      saveSettings();
+      saveSettings(null, null, null);
+    }
+    // return game's players to the lobby, where they are sent available games to join
+    // (game was already removed from list when it started, so other clients don't need to be told anything)
+    for (i = 0; i < game.players.size(); i++) {
+      gamesByPlayer.remove(game.players.get(i));
+      updateLobby(clientNamed(game.players.get(i)));
     }
-    games.remove(game); // remove game from list
-    broadcastGames(); // broadcast available games to join
-    return true;
   }
 
   /** change password of specified client, returns whether succeeded */
-  private boolean changePassword(int clientIndex, String newPassword) {
-    PlayerSocket client = clients.get(clientIndex);
+  private boolean changePassword(PlayerSocket client, String newPassword) {
     PlayerData player = playerNamed(client.getPlayerName());
     if (player == null) {
       client.write(new StringMsg(StringMsg.MsgType.ChangePassword, "You are not signed in"));
@@ -387,15 +775,18 @@ public class ServerApp {
       client.write(new StringMsg(StringMsg.MsgType.ChangePassword, "Password may not be blank"));
       return false;
     }
-    player.setPassword(newPassword);
-    saveSettings();
-    client.write(new StringMsg(StringMsg.MsgType.ChangePassword, "")); // send blank message to indicate success
+    if (isLengthLimited() && newPassword.length() > PlayerData.MaxPasswordLength) {
+      client.write(new StringMsg(StringMsg.MsgType.ChangePassword, "Password may be at most " + PlayerData.MaxPasswordLength + " characters"));
+      return false;
+    }
+    players.setPassword(player.getName(), newPassword);
+    saveSettings(client, new StringMsg(StringMsg.MsgType.ChangePassword, ""), // send blank message to indicate success once saved
+                 new StringMsg(StringMsg.MsgType.ChangePassword, "The server could not save your new password, please try again later"));
     return true;
   }
 
   /** confirm password then delete player account of specified client, returns whether succeeded */
-  private boolean deleteAccount(int clientIndex, String password) {
-    PlayerSocket client = clients.get(clientIndex);
+  private boolean deleteAccount(PlayerSocket client, String password) {
     PlayerData player = playerNamed(client.getPlayerName());
     if (player == null) {
       client.write(new StringMsg(StringMsg.MsgType.DeleteAccount, "You are not signed in"));
@@ -405,24 +796,22 @@ public class ServerApp {
       client.write(new StringMsg(StringMsg.MsgType.DeleteAccount, "Incorrect password"));
       return false;
     }
-    leaveGame(clientIndex); // remove client from game sessions
-    players.remove(player);
-    saveSettings();
-    client.write(new StringMsg(StringMsg.MsgType.DeleteAccount, "")); // send blank message to indicate success
+    leaveGame(client); // remove client from game sessions
+    players.delete(player.getName());
+    saveSettings(client, new StringMsg(StringMsg.MsgType.DeleteAccount, ""), // send blank message to indicate success once saved
+                 new StringMsg(StringMsg.MsgType.DeleteAccount, "The server could not save the deletion of your account, please try again later"));
     return true;
   }
 
   /** remove client from current game, and stop game if it's already started */
-  private void leaveGame(int clientIndex) {
-    GameSession game = playerGame(clients.get(clientIndex).getPlayerName());
+  private void leaveGame(PlayerSocket client) {
+    GameSession game = playerGame(client.getPlayerName());
     if (game != null) {
       if (game.playing) {
-        GameOverMsg msg = new GameOverMsg();
-        msg.complete = false;
-        endGame(clientIndex, msg);
+        endGame(game, false);
       }
       else {
-        joinGame(clientIndex, new GameSession());
+        joinGame(client, new GameSession());
       }
     }
   }
@@ -430,15 +819,7 @@ public class ServerApp {
   /** returns reference to game that specified player has joined,
       or null if specified player didn't join a game */
   private final GameSession playerGame(String name) {
-    int i, j;
-    for (i = 0; i < games.size(); i++) {
-      for (j = 0; j < games.get(i).players.size(); j++) {
-        if (name.equals(games.get(i).players.get(j))) {
-          return games.get(i);
-        }
-      }
-    }
-    return null;
+    return gamesByPlayer.get(name);
   }
 
   /** returns player with specified name,
@@ -447,12 +828,7 @@ public class ServerApp {
     if (name == null) {
       return null;
     }
-    for (int i = 0; i < players.size(); i++) {
-      if (name.equals(players.get(i).getName())) {
-        return players.get(i);
-      }
-    }
-    return null;
+    return players.get(name);
   }
 
   /** returns client with specified player name,
@@ -461,52 +837,304 @@ public class ServerApp {
     if (name == null) {
       return null;
     }
-    for (int i = 0; i < clients.size(); i++) {
-      if (name.equals(clients.get(i).getPlayerName())) {
-        return clients.get(i);
-      }
-    }
-    return null;
+    return clientsByName.get(name);
   }
 
-  /** returns string describing client of specified index */
-  private final String clientString(int clientIndex) {
-    return "Client " + clientIndex 
-           + ((clients.get(clientIndex).getPlayerName() != null) ? (" (" + clients.get(clientIndex).getPlayerName() + ")") : "");
+  /** returns string describing specified client */
+  private final String clientString(PlayerSocket client) {
+    return "Client " + client.getId()
+           + ((client.getPlayerName() != null) ? (" (" + client.getPlayerName() + ")") : "");
   }
 
-  /** load player data from file */
-  private void loadSettings() {
+  /** load player data from files
+      (the first time a MappedPlayerStore is used, players are moved to it from the snapshot and journal files,
+       and if that fails the server doesn't start, rather than starting without them) */
+  private void loadSettings(boolean useMappedStore) throws IOException {
+    if (useMappedStore && !new File(MappedRecordsPath).exists() && (new File(SettingsPath).exists() || new File(JournalPath).exists())) {
+      importMappedStore();
+    }
     try {
-      ObjectInputStream inStream = new ObjectInputStream(new FileInputStream(SettingsPath));
-      Object inObj = inStream.readObject();
-      if (!(inObj instanceof PlayerStatsMsg)) {
-        throw new Exception("Invalid object in settings file");
+      if (useMappedStore) {
+        MappedPlayerStore store = new MappedPlayerStore(MappedRecordsPath, MappedIndexPath, MappedJournalPath);
+        store.load();
+        players = store;
+        post(new PlayersLoaded());
+      }
+      else {
+        HeapPlayerStore store = new HeapPlayerStore(SettingsPath, JournalPath);
+        players = store;
+        store.load(new CommandExecutor(), new PlayersLoaded());
       }
-      players = ((PlayerStatsMsg)inObj).players;
-      inStream.close();
-    }
-    catch (FileNotFoundException ex) {
-      players = new ArrayList<PlayerData>();
     }
     catch (Exception ex) {
       System.out.println("Error loading player data from file. Using empty player list.");
-      players = new ArrayList<PlayerData>();
+      System.out.println("Changes to players will not be saved.");
+      HeapPlayerStore store = new HeapPlayerStore(null, null);
+      try {
+        store.load(null, null);
+      }
+      catch (IOException ex2) {
+        // can't happen when not using files
+      }
+      players = store;
     }
   }
 
-  /** save player data to file */
-  private void saveSettings() {
-    try {
-      ObjectOutputStream outStream = new ObjectOutputStream(new FileOutputStream(SettingsPath));
-      PlayerStatsMsg outObj = new PlayerStatsMsg();
-      outObj.players = players;
-      outStream.writeObject(outObj);
-      outStream.close();
+  /** copy players from snapshot and journal files to new MappedPlayerStore files
+      (new files are written under temporary names, so that they don't exist if the server stops before copying finishes) */
+  private void importMappedStore() throws IOException {
+    HeapPlayerStore oldStore = new HeapPlayerStore(SettingsPath, JournalPath);
+    MappedPlayerStore newStore = new MappedPlayerStore(MappedRecordsPath + ".tmp", MappedIndexPath, MappedJournalPath);
+    System.out.println("Moving players to " + MappedRecordsPath);
+    Files.deleteIfExists(Paths.get(MappedRecordsPath + ".tmp"));
+    Files.deleteIfExists(Paths.get(MappedIndexPath));
+    Files.deleteIfExists(Paths.get(MappedJournalPath));
+    oldStore.load(null, null);
+    newStore.load();
+    newStore.importPlayers(oldStore);
+    newStore.close();
+    oldStore.close();
+    Files.move(Paths.get(MappedRecordsPath + ".tmp"), Paths.get(MappedRecordsPath), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** returns whether player names and passwords are limited in length so that they fit in the records of a MappedPlayerStore */
+  private boolean isLengthLimited() {
+    return players instanceof MappedPlayerStore;
+  }
+
+  /** save changes to player data that were made since the last save, without waiting for the disk,
+      then send specified reply to specified client once they are saved, or failReply if they couldn't be saved
+      (if client is not null) */
+  private void saveSettings(PlayerSocket client, Object reply, Object failReply) {
+    players.commit((client != null) ? new SaveReply(client, reply, failReply) : null);
+  }
+
+  /** run specified command on the server thread as soon as it is free
+      (can be called from any thread) */
+  private void post(Runnable command) {
+    commands.add(command);
+    if (selector != null) {
+      selector.wakeup();
     }
-    catch (Exception ex) {
-      System.out.println("Error saving player data to file.");
-      System.out.println("Make sure the \"save\" folder exists.");
+  }
+
+  /** replies to a client once the player journal says whether the client's changes are saved */
+  private class SaveReply implements PlayerJournal.CommitListener, Runnable {
+    private PlayerSocket client; /**< client to reply to */
+    private Object reply; /**< message to send to client if changes were saved */
+    private Object failReply; /**< message to send to client if changes couldn't be saved */
+    private String newPlayer; /**< name of new player the client is signing in to, which enters the lobby once saved or is deleted if it couldn't be (null if not signing in) */
+    private boolean durable; /**< whether changes were saved (set before this is posted to the server thread) */
+
+    /** constructor for reply to specified client */
+    public SaveReply(PlayerSocket newClient, Object newReply, Object newFailReply) {
+      this(newClient, newReply, newFailReply, null);
+    }
+
+    /** constructor for reply to specified client, which is signing in to specified new player if newPlayerName is not null */
+    public SaveReply(PlayerSocket newClient, Object newReply, Object newFailReply, String newPlayerName) {
+      client = newClient;
+      reply = newReply;
+      failReply = newFailReply;
+      newPlayer = newPlayerName;
+    }
+
+    /** called from the journal's writer thread, so send the reply from the server thread */
+    public void committed(boolean newDurable) {
+      durable = newDurable;
+      post(this);
+    }
+
+    /** send reply if client is still connected */
+    public void run() {
+      if (!durable) {
+        System.out.println("Error saving player data for " + clientString(client));
+        if (newPlayer != null && players.get(newPlayer) != null) {
+          // new player wasn't saved, so remove it so that the client can try creating it again
+          players.delete(newPlayer);
+          players.commit(null);
+        }
+      }
+      if (clients.contains(client)) {
+        if (!durable) {
+          client.write(failReply);
+          if (newPlayer != null) {
+            // client's player wasn't saved, so don't leave the client signed in to it
+            if (clientsByName.get(client.getPlayerName()) == client) {
+              clientsByName.remove(client.getPlayerName());
+            }
+            client.setPlayerName(null);
+          }
+        }
+        else {
+          client.write(reply);
+          if (newPlayer != null) {
+            updateLobby(client);
+          }
+        }
+      }
+    }
+  }
+
+  /** remembers which clients were sent messages, so that flushClients() can write them */
+  private class FlushScheduler implements PlayerSocket.FlushListener {
+    /** add client to list of clients to flush */
+    public void flushNeeded(PlayerSocket client) {
+      flushClients.add(client);
+    }
+  }
+
+  /** disconnects clients that fall too far behind reading their messages */
+  private class SlowConsumerEviction implements PlayerSocket.SlowConsumerListener {
+    /** disconnect client once the server finishes what it is doing (since this is called in the middle of writing to it) */
+    public void slowConsumer(PlayerSocket client) {
+      System.out.println("Disconnecting " + clientString(client) + " because " + client.getMaxQueuedFrames() + " messages totaling "
+                         + client.getMaxQueuedBytes() + " bytes were waiting to be sent to it");
+      post(new MessageCommand(client, new CloseConnectionMsg()));
+    }
+  }
+
+  /** runs commands on the server thread (used by the player store to add players to it while they load) */
+  private class CommandExecutor implements Executor {
+    /** post specified command to server thread */
+    public void execute(Runnable command) {
+      post(command);
+    }
+  }
+
+  /** reports how long loading players took and lists them, once they are all loaded */
+  private class PlayersLoaded implements Runnable {
+    /** print startup times and players */
+    public void run() {
+      long loadedTime = System.nanoTime();
+      System.out.println("Loaded " + players.size() + " players " + millis(loadedTime - startTime) + " ms after starting ("
+                         + millis(loadedTime - readyTime) + " ms after accepting connections)");
+      if (players.size() <= MaxListedPlayers) {
+        System.out.println("Players on this server:");
+        for (PlayerData player : players) {
+          System.out.println(player.getName());
+        }
+      }
+      System.out.println();
+    }
+  }
+
+  /** finishes writing player changes to disk when the server is closed */
+  private class SaveOnExit implements Runnable {
+    /** close player store */
+    public void run() {
+      try {
+        players.close();
+      }
+      catch (IOException ex) {
+        System.out.println("Error saving player data to file.");
+      }
+    }
+  }
+
+  /** accepts new clients in loopThreads() and starts a thread to read messages from each of them */
+  private class ConnectionAcceptor implements Runnable {
+    /** accept clients until the server channel is closed */
+    public void run() {
+      SocketChannel channel;
+      PlayerSocket client;
+      while (serverChannel.isOpen()) {
+        try {
+          channel = serverChannel.accept(); // server channel is in blocking mode
+          channel.socket().setTcpNoDelay(true);
+          client = new PlayerSocket(channel);
+          client.useWriterThread();
+          commands.put(new JoinCommand(client));
+          newConnectionThread(new ConnectionWriter(client)).start();
+          newConnectionThread(new ConnectionReader(client)).start();
+        }
+        catch (Exception ex) {
+          ex.printStackTrace();
+        }
+      }
+    }
+  }
+
+  /** does blocking reads from a single client in loopThreads() and passes its messages to the server thread */
+  private class ConnectionReader implements Runnable {
+    private final PlayerSocket client; /**< client to read messages from */
+
+    /** constructor for connection reader */
+    public ConnectionReader(PlayerSocket newClient) {
+      client = newClient;
+    }
+
+    /** read messages until client leaves */
+    public void run() {
+      Object msgObj;
+      try {
+        do {
+          msgObj = client.read(); // blocks until some bytes arrive
+          if (msgObj != null) {
+            commands.put(new MessageCommand(client, msgObj));
+          }
+        } while (!(msgObj instanceof CloseConnectionMsg));
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** does blocking writes to a single client in loopThreads(), so that the server thread never waits for a slow client */
+  private class ConnectionWriter implements Runnable {
+    private final PlayerSocket client; /**< client to write messages to */
+
+    /** constructor for connection writer */
+    public ConnectionWriter(PlayerSocket newClient) {
+      client = newClient;
+    }
+
+    /** write messages as they are queued until client leaves */
+    public void run() {
+      try {
+        while (client.writeQueued()) {
+          // keep writing
+        }
+      }
+      catch (IOException ex) {
+        // client disconnected, which the reader thread also notices
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** command to add a newly connected client to the clients list */
+  private class JoinCommand implements Runnable {
+    private final PlayerSocket client; /**< client that connected */
+
+    /** constructor for join command */
+    public JoinCommand(PlayerSocket newClient) {
+      client = newClient;
+    }
+
+    /** add client to the clients list */
+    public void run() {
+      addClient(client);
+    }
+  }
+
+  /** command to handle a message received from a client */
+  private class MessageCommand implements Runnable {
+    private final PlayerSocket client; /**< client that sent the message */
+    private final Object msgObj; /**< message that was received */
+
+    /** constructor for message command */
+    public MessageCommand(PlayerSocket newClient, Object newMsgObj) {
+      client = newClient;
+      msgObj = newMsgObj;
+    }
+
+    /** handle the message */
+    public void run() {
+      handleMessage(client, msgObj);
     }
   }
 }
@@ -8,6 +8,8 @@ import java.io.*;
 
 /** networking message to sign in to (existing or new) player */
 public class SignInMsg implements Serializable {
+  private static final long serialVersionUID = 6044299049661250443L;
+
   /** name of player that is being signed in to */
   public String playerName;
   /** password of player account */
@@ -0,0 +1,32 @@
+// SplittableShuffleRandom.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+
+/** ShuffleRandom that draws from a java.util.SplittableRandom
+    (unlike Random, it isn't shared between threads, so each simulation thread should split() its own) */
+public class SplittableShuffleRandom implements ShuffleRandom {
+  private SplittableRandom rand; /**< generator to draw from */
+
+  /** constructor that draws from specified generator */
+  public SplittableShuffleRandom(SplittableRandom newRand) {
+    rand = newRand;
+  }
+
+  /** constructor that draws from a new SplittableRandom with specified seed */
+  public SplittableShuffleRandom(long seed) {
+    this(new SplittableRandom(seed));
+  }
+
+  public int nextInt(int bound) {
+    return rand.nextInt(bound);
+  }
+
+  /** returns new generator whose numbers are independent of this one's */
+  public SplittableShuffleRandom split() {
+    return new SplittableShuffleRandom(rand.split());
+  }
+}
@@ -9,6 +9,8 @@ import java.util.*;
 
 /** networking message indicating to start game with specified players and random number seed */
 public class StartGameMsg implements Serializable {
+  private static final long serialVersionUID = -6854807821657473336L;
+
   public GameSessionMsg players; /**< contains list of players in upcoming game */
   public long seed; /**< random number seed to use to generate game */
 
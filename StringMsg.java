@@ -8,6 +8,8 @@ import java.io.*;
 
 /** networking message containing a string */
 public class StringMsg implements Serializable {
+  private static final long serialVersionUID = 7054212918645031448L;
+
   /** categories that can be associated with a StringMsg */
   public enum MsgType {
     SignInSuccess, SignInError, ChangePassword, DeleteAccount
@@ -0,0 +1,206 @@
+// TranspositionTable.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/** fixed-size table remembering the results of AI searches by the Zobrist hash of the position they searched,
+    so positions reached by playing the same cards in a different order are only searched once
+
+    A position's hash is the XOR of a random 64-bit key for each card in each hand, the card led to the current trick,
+    the player to move, the trump suit, and the number of cards left in the talon (see hashPosition()),
+    so playing a card only needs a few XORs to update the hash.
+
+    Each entry is 2 longs: the hash XORed with the entry's data, then the data. A probe only accepts an entry if the two XOR back to the hash,
+    so threads may probe and store without locks: an entry torn by threads storing at the same time just looks like a miss.
+    (The hit counters aren't synchronized either, so they may miss a few counts when threads share a table.)
+
+    Each bucket holds 2 entries. The first is only replaced by a search of at least as many cards, or any search after newSearch(),
+    so results of big subtrees survive, and the second is always replaced, so recent results are kept too. */
+public class TranspositionTable {
+  // bound types stored with each result
+  public static final int Exact = 0; /**< result is exact */
+  public static final int Lower = 1; /**< result is a lower bound (the search failed high) */
+  public static final int Upper = 2; /**< result is an upper bound (the search failed low) */
+  public static final long NoEntry = -1; /**< returned by probe() when the position isn't in the table */
+  public static final int NoMove = 63; /**< stored instead of a card when there is no best move */
+
+  // bit positions of fields in entry data
+  private static final int ValueShift = 0; /**< result (6 bits) */
+  private static final int BoundShift = 6; /**< bound type (2 bits) */
+  private static final int DepthShift = 8; /**< number of cards left to play (6 bits) */
+  private static final int MoveShift = 14; /**< index of best card (6 bits) */
+  private static final int GenerationShift = 20; /**< value of generation when stored (8 bits) */
+  private static final int FieldMask = 63; /**< mask of a 6-bit field */
+
+  private static final long[][] CardKeys; /**< key for each card in each player's hand */
+  private static final long[] LeadKeys; /**< key for each card when it was led to the current trick */
+  private static final long[] MoverKeys; /**< key for each player to move */
+  private static final long[] TrumpKeys; /**< key for each trump suit */
+  private static final long[] TalonKeys; /**< key for each number of cards left in the talon */
+
+  private long[] entries; /**< 2 longs per entry and 2 entries per bucket */
+  private int bucketMask; /**< number of buckets minus 1 */
+  private int generation; /**< incremented by newSearch(), so entries from earlier searches can be replaced */
+  private long probes; /**< number of calls to probe() */
+  private long hits; /**< number of probes that found their position */
+  private long stores; /**< number of calls to store() */
+
+  static {
+    XoshiroRandom rand = new XoshiroRandom(0x5eed); // fixed seed, so hashes are the same every run
+    int i, j;
+    CardKeys = new long[GameEngine.MaxPlayers][CardSet.NCards];
+    LeadKeys = new long[CardSet.NCards];
+    MoverKeys = new long[GameEngine.MaxPlayers];
+    TrumpKeys = new long[Card.Suit.values().length];
+    TalonKeys = new long[CardSet.NCards + 1];
+    for (i = 0; i < GameEngine.MaxPlayers; i++) {
+      for (j = 0; j < CardSet.NCards; j++) {
+        CardKeys[i][j] = rand.nextLong();
+      }
+      MoverKeys[i] = rand.nextLong();
+    }
+    for (i = 0; i < CardSet.NCards; i++) {
+      LeadKeys[i] = rand.nextLong();
+    }
+    for (i = 0; i < TrumpKeys.length; i++) {
+      TrumpKeys[i] = rand.nextLong();
+    }
+    for (i = 0; i < TalonKeys.length; i++) {
+      TalonKeys[i] = rand.nextLong();
+    }
+  }
+
+  /** constructor for table with 2^sizeBits buckets (each bucket takes 32 bytes) */
+  public TranspositionTable(int sizeBits) {
+    if (sizeBits < 0 || sizeBits > 26) {
+      throw new IllegalArgumentException("Table size must be between 2^0 and 2^26 buckets");
+    }
+    entries = new long[4 << sizeBits];
+    bucketMask = (1 << sizeBits) - 1;
+  }
+
+  /** returns hash of position with specified hands (as CardSets, indexed by player), player to move,
+      card led to the current trick (-1 if none), trump suit, and number of cards left in the talon */
+  public static long hashPosition(long[] hands, int mover, int leadCard, Card.Suit trump, int talonSize) {
+    long ret = MoverKeys[mover] ^ TrumpKeys[trump.ordinal()] ^ TalonKeys[talonSize];
+    long set;
+    int i;
+    for (i = 0; i < hands.length; i++) {
+      for (set = hands[i]; set != 0; set &= set - 1) {
+        ret ^= CardKeys[i][CardSet.lowest(set)];
+      }
+    }
+    if (leadCard >= 0) {
+      ret ^= LeadKeys[leadCard];
+    }
+    return ret;
+  }
+
+  /** returns key to XOR into hash when specified card enters or leaves specified player's hand */
+  public static long cardKey(int player, int card) {
+    return CardKeys[player][card];
+  }
+
+  /** returns key to XOR into hash when specified card is led to or cleared from the current trick */
+  public static long leadKey(int card) {
+    return LeadKeys[card];
+  }
+
+  /** returns key to XOR into hash when specified player starts or stops being the player to move */
+  public static long moverKey(int player) {
+    return MoverKeys[player];
+  }
+
+  /** returns key to XOR into hash when the talon goes to or from specified number of cards */
+  public static long talonKey(int talonSize) {
+    return TalonKeys[talonSize];
+  }
+
+  /** returns data of entry for position with specified hash, or NoEntry if it isn't in the table
+      (read it with getValue(), getBound(), getDepth(), and getMove()) */
+  public long probe(long hash) {
+    int bucket = ((int)hash & bucketMask) * 4;
+    long data;
+    int i;
+    probes++;
+    for (i = bucket; i < bucket + 4; i += 2) {
+      data = entries[i + 1];
+      if ((entries[i] ^ data) == hash) {
+        hits++;
+        return data;
+      }
+    }
+    return NoEntry;
+  }
+
+  /** store result of searching position with specified hash
+      (value must be between 0 and 62, depth is the number of cards left to play, and move is the best card or NoMove) */
+  public void store(long hash, int value, int bound, int depth, int move) {
+    int i = ((int)hash & bucketMask) * 4;
+    long data = ((long)value << ValueShift) | ((long)bound << BoundShift) | ((long)depth << DepthShift)
+                | ((long)move << MoveShift) | ((long)(generation & 255) << GenerationShift);
+    long old = entries[i + 1];
+    stores++;
+    if ((entries[i] ^ old) != hash && (old >>> GenerationShift & 255) == (generation & 255)
+        && getDepth(old) > depth) {
+      i += 2; // first entry holds a bigger search from this generation (of another position), so use the always-replace entry
+    }
+    entries[i] = hash ^ data;
+    entries[i + 1] = data;
+  }
+
+  /** start a new search, so entries stored by earlier searches may be replaced */
+  public void newSearch() {
+    generation++;
+  }
+
+  /** remove all entries and reset the counters */
+  public void clear() {
+    java.util.Arrays.fill(entries, 0);
+    generation = 0;
+    probes = 0;
+    hits = 0;
+    stores = 0;
+  }
+
+  /** returns result stored in specified entry data */
+  public static int getValue(long data) {
+    return (int)(data >>> ValueShift) & FieldMask;
+  }
+
+  /** returns bound type (Exact, Lower, or Upper) stored in specified entry data */
+  public static int getBound(long data) {
+    return (int)(data >>> BoundShift) & 3;
+  }
+
+  /** returns number of cards left to play stored in specified entry data */
+  public static int getDepth(long data) {
+    return (int)(data >>> DepthShift) & FieldMask;
+  }
+
+  /** returns best card (or NoMove) stored in specified entry data */
+  public static int getMove(long data) {
+    return (int)(data >>> MoveShift) & FieldMask;
+  }
+
+  /** getter for number of probes */
+  public final long getProbes() {
+    return probes;
+  }
+
+  /** getter for number of probes that found their position */
+  public final long getHits() {
+    return hits;
+  }
+
+  /** getter for number of results stored */
+  public final long getStores() {
+    return stores;
+  }
+
+  /** returns fraction of probes that found their position */
+  public final double getHitRate() {
+    return probes == 0 ? 0 : (double)hits / probes;
+  }
+}
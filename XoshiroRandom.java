@@ -0,0 +1,94 @@
+// XoshiroRandom.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+/** xoshiro256** random number generator (see https://prng.di.unimi.it/)
+    (it is fast and has 256 bits of state, so split() can hand out 2^128 non-overlapping streams of 2^128 numbers each;
+     like SplittableRandom, a single instance must not be shared between threads) */
+public class XoshiroRandom implements ShuffleRandom {
+  /** polynomial that advances the generator by 2^128 steps */
+  private static final long[] Jump = {0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL};
+
+  private long s0, s1, s2, s3; /**< generator state (must not be all zero) */
+
+  /** constructor that fills the state from specified seed using SplitMix64, as recommended by xoshiro's authors */
+  public XoshiroRandom(long seed) {
+    s0 = splitMix(seed += 0x9e3779b97f4a7c15L);
+    s1 = splitMix(seed += 0x9e3779b97f4a7c15L);
+    s2 = splitMix(seed += 0x9e3779b97f4a7c15L);
+    s3 = splitMix(seed += 0x9e3779b97f4a7c15L);
+  }
+
+  /** constructor that copies the state of specified generator */
+  private XoshiroRandom(XoshiroRandom other) {
+    s0 = other.s0;
+    s1 = other.s1;
+    s2 = other.s2;
+    s3 = other.s3;
+  }
+
+  /** returns next 64 random bits */
+  public long nextLong() {
+    long ret = Long.rotateLeft(s1 * 5, 7) * 9;
+    long t = s1 << 17;
+    s2 ^= s0;
+    s3 ^= s1;
+    s1 ^= s2;
+    s0 ^= s3;
+    s2 ^= t;
+    s3 = Long.rotateLeft(s3, 45);
+    return ret;
+  }
+
+  /** returns uniformly distributed random int between 0 (inclusive) and bound (exclusive)
+      (multiplies 32 random bits by bound and keeps the high half, rejecting the few values that would make it biased) */
+  public int nextInt(int bound) {
+    long product, low, threshold;
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    product = (nextLong() >>> 32) * bound;
+    low = product & 0xffffffffL;
+    if (low < bound) {
+      threshold = (0x100000000L - bound) % bound;
+      while (low < threshold) {
+        product = (nextLong() >>> 32) * bound;
+        low = product & 0xffffffffL;
+      }
+    }
+    return (int)(product >>> 32);
+  }
+
+  /** returns new generator that continues from this one's current state,
+      and advances this generator by 2^128 steps so the two don't produce overlapping numbers */
+  public XoshiroRandom split() {
+    XoshiroRandom ret = new XoshiroRandom(this);
+    long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+    int i, bit;
+    for (i = 0; i < Jump.length; i++) {
+      for (bit = 0; bit < 64; bit++) {
+        if ((Jump[i] & (1L << bit)) != 0) {
+          t0 ^= s0;
+          t1 ^= s1;
+          t2 ^= s2;
+          t3 ^= s3;
+        }
+        nextLong();
+      }
+    }
+    s0 = t0;
+    s1 = t1;
+    s2 = t2;
+    s3 = t3;
+    return ret;
+  }
+
+  /** SplitMix64 output function, which scrambles specified value into a well mixed long */
+  private static long splitMix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,97 @@
+// AIScalingBench.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/** benchmark reporting how many decisions per second SamplingAI makes with each kind of parallelism,
+    on ForkJoinPools of 1 thread up to the number of available processors
+    (run with "java -cp .:bench AIScalingBench", optionally followed by the number of samples per decision, see compile.txt)
+
+    Every configuration decides the same positions, which are reached by random play while the talon has cards,
+    with AIs for both players watching every card played. Every kind of parallelism decides all the positions before any are timed,
+    so the JIT has compiled all of them, then each configuration reports its fastest pass (this machine's noise only makes passes slower). */
+public class AIScalingBench {
+  private static final int NPositions = 64; /**< number of different positions to decide */
+  private static final int NPasses = 5; /**< number of timed passes over the positions per configuration */
+
+  public static void main(String[] args) {
+    int nSamples = (args.length > 0) ? Integer.parseInt(args[0]) : SamplingAI.DefaultSamples;
+    int nProcessors = Runtime.getRuntime().availableProcessors();
+    SamplingAI[] ais = positions(nSamples);
+    ForkJoinPool pool;
+    double sequential, rate;
+    int threads;
+    System.out.println("samples per decision: " + nSamples + ", available processors: " + nProcessors);
+    pool = new ForkJoinPool(nProcessors);
+    for (SamplingAI.Parallelism parallelism : SamplingAI.Parallelism.values()) {
+      measure(ais, parallelism, pool); // warm up
+    }
+    pool.shutdown();
+    sequential = measure(ais, SamplingAI.Parallelism.Sequential, null);
+    System.out.printf("%-10s  %7s  %13s  %7s%n", "mode", "threads", "decisions/s", "speedup");
+    System.out.printf("%-10s  %7d  %13.1f  %7.2f%n", SamplingAI.Parallelism.Sequential, 1, sequential, 1.0);
+    for (SamplingAI.Parallelism parallelism : new SamplingAI.Parallelism[] {SamplingAI.Parallelism.Root, SamplingAI.Parallelism.Leaf}) {
+      for (threads = 1; threads <= nProcessors; threads++) {
+        pool = new ForkJoinPool(threads);
+        rate = measure(ais, parallelism, pool);
+        pool.shutdown();
+        System.out.printf("%-10s  %7d  %13.1f  %7.2f%n", parallelism, threads, rate, rate / sequential);
+      }
+    }
+  }
+
+  /** returns an AI, ready to decide which card to play, for each of NPositions positions reached by random play while the talon has cards */
+  private static SamplingAI[] positions(int nSamples) {
+    ArrayList<String> names = new ArrayList<String>(Arrays.asList("alice", "bob"));
+    XoshiroRandom rand = new XoshiroRandom(1);
+    SamplingAI[] ret = new SamplingAI[NPositions];
+    SamplingAI[] players = new SamplingAI[2];
+    GameEngine game;
+    int nPlays, card, i, j;
+    for (i = 0; i < NPositions; i++) {
+      game = new GameEngine(names, rand);
+      for (j = 0; j < 2; j++) {
+        players[j] = new SamplingAI(new XoshiroRandom(i * 2 + j), nSamples, SamplingAI.DefaultSearchTricks, false);
+        players[j].newGame(game, j);
+        players[j].update();
+      }
+      nPlays = rand.nextInt(game.getTalon().size()); // each trick draws 2 talon cards, so this stays in the talon phase
+      while (nPlays-- > 0) {
+        do {
+          card = rand.nextInt(game.getPlayer(game.getActivePlayer()).getHand().size());
+        } while (!game.isValidPlay(card));
+        game.play(card);
+        players[0].update();
+        players[1].update();
+      }
+      ret[i] = players[game.getActivePlayer()];
+    }
+    return ret;
+  }
+
+  /** returns decisions per second that specified AIs make with specified parallelism and pool, on the fastest of NPasses passes */
+  private static double measure(SamplingAI[] ais, SamplingAI.Parallelism parallelism, ForkJoinPool pool) {
+    long best = Long.MAX_VALUE;
+    long check = 0;
+    long start;
+    int pass, i;
+    for (SamplingAI ai : ais) {
+      ai.setParallelism(parallelism, pool);
+    }
+    for (pass = 0; pass < NPasses; pass++) {
+      start = System.nanoTime();
+      for (i = 0; i < ais.length; i++) {
+        check += ais[i].chooseCard();
+      }
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    if (check < 0) {
+      System.out.println(check); // use the result so the JIT can't skip deciding
+    }
+    return ais.length / (best / 1e9);
+  }
+}
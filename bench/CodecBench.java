@@ -0,0 +1,205 @@
+// CodecBench.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/** benchmark measuring, for every message type and every codec, how long messages take to encode and decode,
+    how many bytes of heap that allocates, and how many bytes each message takes on the wire
+    (run with "java -cp .:bench CodecBench", see compile.txt; add message names such as "PlayerStatsMsg" to only measure those)
+
+    Copies of each message are encoded one after another on one codec, as a connection would send them, and the frames are decoded in order on a second codec.
+    So the object stream numbers include its class descriptors, which are rewritten after every stream reset,
+    and the handoff to the thread that ObjectStreamReader decodes the stream on, whose allocations are counted with this thread's.
+    (Each encoded message is a separate copy because the server builds a new message every time it sends one;
+     encoding the same objects again would let the object stream write back references instead of their contents.)
+    The leaderboard is measured with 10 to 1000000 players, since its size grows with the number of accounts on the server.
+    It is built the way the server builds it, so the largest ones are cut down to the players that fit in one frame,
+    and are labeled with the number of players kept out of the number on the server. */
+public class CodecBench {
+  private static final String[] CodecNames = {"object", "binary v1", "binary v2"}; /**< names of codecs, in the order newCodec() takes */
+  private static final int[] LeaderboardSizes = {10, 100, 1000, 10000, 100000, 1000000}; /**< numbers of players in measured leaderboards */
+  private static final long TargetBytes = 16L * 1024 * 1024; /**< approximate number of bytes to encode per measurement */
+  private static final int MaxMsgs = 50000; /**< maximum number of messages to encode per measurement */
+  private static final int NPasses = 2; /**< number of times to measure each message (all but the last warm up the JIT) */
+
+  private static com.sun.management.ThreadMXBean threads; /**< used to count bytes allocated by each thread */
+  private static long sink; /**< decoded messages contribute to this so the JIT can't skip decoding */
+
+  public static void main(String[] args) throws IOException, ClassNotFoundException {
+    LinkedHashMap<String, Object> msgs = sampleMsgs();
+    List<String> only = Arrays.asList(args);
+    int codec;
+    threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    System.out.println("message                           codec      wire bytes  encode us  encode alloc  decode us  decode alloc");
+    for (Map.Entry<String, Object> entry : msgs.entrySet()) {
+      if (!only.isEmpty() && !only.contains(entry.getValue().getClass().getName())) {
+        continue;
+      }
+      for (codec = 0; codec < CodecNames.length; codec++) {
+        if (codec == 1 && entry.getValue() instanceof LobbyDeltaMsg) {
+          continue; // version 1 of the binary protocol doesn't have lobby deltas
+        }
+        measure(entry.getKey(), entry.getValue(), codec);
+      }
+    }
+    if (sink == 42) {
+      System.out.println(); // practically never happens, but the JIT doesn't know that
+    }
+  }
+
+  /** print encode and decode cost of specified message with specified codec */
+  private static void measure(String name, Object msg, int codec) throws IOException, ClassNotFoundException {
+    MsgCodec encoder, decoder;
+    Object[] copies;
+    byte[][] frames;
+    long[] decodeThreads, decodeStartBytes;
+    long start, startBytes, encodeTime, encodeBytes, decodeTime, decodeBytes, wireBytes;
+    int nMsgs, pass, i;
+    // encode large messages fewer times
+    nMsgs = (int)Math.max(2, Math.min(MaxMsgs, TargetBytes / newCodec(codec).encode(msg).length));
+    for (pass = 0; pass < NPasses; pass++) {
+      copies = new Object[nMsgs];
+      for (i = 0; i < nMsgs; i++) {
+        copies[i] = copy(msg);
+      }
+      frames = new byte[nMsgs][];
+      encoder = newCodec(codec);
+      startBytes = allocatedBytes();
+      start = System.nanoTime();
+      for (i = 0; i < nMsgs; i++) {
+        frames[i] = encoder.encode(copies[i]);
+      }
+      copies = null; // let the copies be collected before decoding
+      encodeTime = System.nanoTime() - start;
+      encodeBytes = allocatedBytes() - startBytes;
+      decoder = newCodec(codec);
+      if (encoder instanceof ObjectStreamCodec) {
+        decoder.decode(((ObjectStreamCodec)encoder).getHeader()); // an object stream starts with its header (and this starts its reader thread)
+      }
+      decodeThreads = threads.getAllThreadIds();
+      decodeStartBytes = threads.getThreadAllocatedBytes(decodeThreads);
+      start = System.nanoTime();
+      for (i = 0; i < nMsgs; i++) {
+        sink += decoder.decode(frames[i]).hashCode();
+      }
+      decodeTime = System.nanoTime() - start;
+      decodeBytes = allocatedSince(decodeThreads, decodeStartBytes);
+      if (decoder instanceof ObjectStreamCodec) {
+        ((ObjectStreamCodec)decoder).close();
+      }
+      if (pass == NPasses - 1) {
+        wireBytes = 0;
+        for (i = 0; i < nMsgs; i++) {
+          // PlayerSocket sends a 4-byte length before each frame, but sends object streams without frames
+          if (!(encoder instanceof ObjectStreamCodec)) {
+            PlayerSocket.checkFrameSize(frames[i]);
+          }
+          wireBytes += ((encoder instanceof ObjectStreamCodec) ? 0 : 4) + frames[i].length;
+        }
+        System.out.printf("%-32s  %-9s  %10d  %9.2f  %12d  %9.2f  %12d%n", name, CodecNames[codec], wireBytes / nMsgs,
+                          encodeTime / 1000.0 / nMsgs, encodeBytes / nMsgs, decodeTime / 1000.0 / nMsgs, decodeBytes / nMsgs);
+      }
+    }
+  }
+
+  /** returns deep copy of specified message, which shares no objects with it */
+  private static Object copy(Object msg) throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(msg);
+    out.close();
+    return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+  }
+
+  /** returns new codec of specified index in CodecNames */
+  private static MsgCodec newCodec(int codec) throws IOException {
+    if (codec == 0) {
+      return new ObjectStreamCodec();
+    }
+    return new BinaryMsgCodec(codec);
+  }
+
+  /** returns total number of bytes allocated by this thread so far */
+  private static long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** returns total number of bytes allocated by specified threads since they had allocated the specified numbers of bytes
+      (ignoring threads that ended in between, such as reader threads of earlier measurements) */
+  private static long allocatedSince(long[] ids, long[] startBytes) {
+    long[] bytes = threads.getThreadAllocatedBytes(ids);
+    long ret = 0;
+    int i;
+    for (i = 0; i < ids.length; i++) {
+      if (bytes[i] >= 0 && startBytes[i] >= 0) {
+        ret += bytes[i] - startBytes[i];
+      }
+    }
+    return ret;
+  }
+
+  /** returns a typical message of each type, as the client or server sends it, keyed by the name to print */
+  private static LinkedHashMap<String, Object> sampleMsgs() {
+    LinkedHashMap<String, Object> ret = new LinkedHashMap<String, Object>();
+    SignInMsg signIn = new SignInMsg();
+    ArrayList<PlayerData> players;
+    PlayerStatsMsg playerStats;
+    GameSessionListMsg gameSessionList = new GameSessionListMsg();
+    StartGameMsg startGame = new StartGameMsg();
+    GameOverMsg gameOver = new GameOverMsg();
+    LobbyDeltaMsg lobbyDelta = new LobbyDeltaMsg();
+    int i;
+    ret.put("CloseConnectionMsg", new CloseConnectionMsg());
+    signIn.playerName = "player123";
+    signIn.password = "password123";
+    ret.put("SignInMsg", signIn);
+    ret.put("StringMsg", new StringMsg(StringMsg.MsgType.SignInError, "Incorrect player name or password"));
+    ret.put("PlayerStatsMsg (request)", new PlayerStatsMsg());
+    for (int nPlayers : LeaderboardSizes) {
+      players = new ArrayList<PlayerData>(nPlayers);
+      for (i = 0; i < nPlayers; i++) {
+        players.add(new PlayerData("player" + i, "password" + i, i % 50, i % 50 + i % 7));
+      }
+      playerStats = PlayerStatsMsg.leaderboard(players, nPlayers);
+      if (playerStats.players.size() < nPlayers) {
+        ret.put("PlayerStatsMsg (" + playerStats.players.size() + "/" + nPlayers + ")", playerStats);
+      }
+      else {
+        ret.put("PlayerStatsMsg (" + nPlayers + ")", playerStats);
+      }
+    }
+    ret.put("GameSessionMsg", new GameSessionMsg(session("player1", "player2")));
+    gameSessionList.games = new ArrayList<GameSessionMsg>();
+    gameSessionList.gameIds = new int[10];
+    for (i = 0; i < gameSessionList.gameIds.length; i++) {
+      gameSessionList.games.add(new GameSessionMsg(session("player" + i)));
+      gameSessionList.gameIds[i] = i;
+    }
+    gameSessionList.version = 1000;
+    ret.put("GameSessionListMsg (10)", gameSessionList);
+    startGame.players = new GameSessionMsg(session("player1", "player2"));
+    ret.put("StartGameMsg", startGame);
+    ret.put("GamePlayMsg", new GamePlayMsg(5));
+    gameOver.complete = true;
+    gameOver.winner = 1;
+    ret.put("GameOverMsg", gameOver);
+    lobbyDelta.type = LobbyDeltaMsg.DeltaType.PlayerJoined;
+    lobbyDelta.version = 1001;
+    lobbyDelta.gameId = 3;
+    lobbyDelta.players = new ArrayList<String>(Arrays.asList("player2"));
+    ret.put("LobbyDeltaMsg", lobbyDelta);
+    return ret;
+  }
+
+  /** returns game session containing specified players */
+  private static GameSession session(String... players) {
+    GameSession ret = new GameSession();
+    ret.players.addAll(Arrays.asList(players));
+    return ret;
+  }
+}
@@ -0,0 +1,575 @@
+// CoreBench.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.util.*;
+
+/** microbenchmarks of the game core, compared against baseline results so regressions are visible
+    (run with "java -cp .:bench CoreBench" from the folder containing bench/, see compile.txt;
+     add "save" to replace the baseline with this run's results, or benchmark names to run only those benchmarks)
+
+    Each benchmark is warmed up, then timed over several batches, and the median time per operation is reported.
+    A benchmark is flagged if it is more than RegressionRatio times slower than its baseline.
+    The baseline was measured on a single machine, so only compare it with results from the same machine. */
+public class CoreBench {
+  private static final String BaselineFile = "bench/CoreBench.baseline.txt"; /**< file containing baseline ns/op of each benchmark */
+  private static final long WarmupNanos = 1000000000L; /**< how long to run each benchmark before timing it */
+  private static final long BatchNanos = 100000000L; /**< approximate duration of each timed batch */
+  private static final int NBatches = 11; /**< number of timed batches per benchmark */
+  private static final double RegressionRatio = 1.25; /**< ratio to baseline above which a result is flagged as a regression */
+  private static final int NHands = 1024; /**< number of different hands that hand benchmarks cycle through */
+
+  private static long sink; /**< benchmark results are added to this so the JIT can't remove the benchmarked code */
+
+  /** a single benchmark */
+  private interface Benchmark {
+    /** returns name of benchmark, as used in the baseline file */
+    public String getName();
+
+    /** set up state needed to run specified number of operations (not timed) */
+    public void prepare(int ops);
+
+    /** run specified number of operations, returning a value that depends on their results */
+    public long run(int ops);
+  }
+
+  public static void main(String[] args) throws IOException {
+    Benchmark[] benchmarks = {new ShuffleSeedBench(), new ShuffleFastBench(), new SortBench(), new GetEqualCardBench(),
+                              new DeckRangeBench(), new IsValidPlayBench(), new PlayTrickBench(), new PlayoutBench(),
+                              new HeuristicAIBench(), new SamplingAIBench(), new ISMCTSAIBench(), new EndgameSolverBench()};
+    HashMap<String, Double> baseline = readBaseline();
+    HashMap<String, Double> results = new HashMap<String, Double>();
+    ArrayList<String> only = new ArrayList<String>();
+    boolean save = false;
+    Double base;
+    double nsPerOp;
+    for (String arg : args) {
+      if (arg.equals("save")) {
+        save = true;
+      }
+      else {
+        only.add(arg);
+      }
+    }
+    System.out.printf("%-24s  %10s  %10s  %6s%n", "benchmark", "ns/op", "baseline", "ratio");
+    for (Benchmark benchmark : benchmarks) {
+      if (!only.isEmpty() && !only.contains(benchmark.getName())) {
+        continue;
+      }
+      nsPerOp = measure(benchmark);
+      results.put(benchmark.getName(), nsPerOp);
+      base = baseline.get(benchmark.getName());
+      if (base == null) {
+        System.out.printf("%-24s  %10.1f  %10s%n", benchmark.getName(), nsPerOp, "-");
+      }
+      else {
+        System.out.printf("%-24s  %10.1f  %10.1f  %6.2f%s%n", benchmark.getName(), nsPerOp, base, nsPerOp / base,
+                          nsPerOp > base * RegressionRatio ? "  REGRESSION" : "");
+      }
+    }
+    if (save) {
+      baseline.putAll(results);
+      writeBaseline(baseline, benchmarks);
+      System.out.println("saved baseline to " + BaselineFile);
+    }
+    if (sink == 42) {
+      System.out.println(); // practically never happens, but the JIT doesn't know that
+    }
+  }
+
+  /** returns median ns/op of specified benchmark */
+  private static double measure(Benchmark benchmark) {
+    double[] nsPerOp = new double[NBatches];
+    long elapsed, warmupEnd;
+    int ops = 1;
+    int i;
+    // find number of operations that takes about 1/10 of a batch, then scale it up to a whole batch
+    do {
+      ops *= 2;
+      elapsed = time(benchmark, ops);
+    } while (elapsed < BatchNanos / 10);
+    ops = (int)Math.max(1, Math.min(Integer.MAX_VALUE, ops * (double)BatchNanos / elapsed));
+    warmupEnd = System.nanoTime() + WarmupNanos;
+    while (System.nanoTime() < warmupEnd) {
+      time(benchmark, ops);
+    }
+    for (i = 0; i < NBatches; i++) {
+      nsPerOp[i] = time(benchmark, ops) / (double)ops;
+    }
+    Arrays.sort(nsPerOp);
+    return nsPerOp[NBatches / 2];
+  }
+
+  /** returns how many nanoseconds specified benchmark takes to run specified number of operations */
+  private static long time(Benchmark benchmark, int ops) {
+    long start;
+    benchmark.prepare(ops);
+    start = System.nanoTime();
+    sink += benchmark.run(ops);
+    return System.nanoTime() - start;
+  }
+
+  /** returns baseline ns/op of each benchmark, or an empty map if there is no baseline file */
+  private static HashMap<String, Double> readBaseline() throws IOException {
+    HashMap<String, Double> ret = new HashMap<String, Double>();
+    BufferedReader in;
+    String line;
+    String[] fields;
+    if (!new File(BaselineFile).exists()) {
+      return ret;
+    }
+    in = new BufferedReader(new FileReader(BaselineFile));
+    try {
+      while ((line = in.readLine()) != null) {
+        fields = line.trim().split("\\s+");
+        if (fields.length == 2 && !line.startsWith("#")) {
+          ret.put(fields[0], Double.valueOf(fields[1]));
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    return ret;
+  }
+
+  /** write specified baseline ns/op to the baseline file, in the order the benchmarks are run */
+  private static void writeBaseline(HashMap<String, Double> baseline, Benchmark[] benchmarks) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(BaselineFile));
+    try {
+      out.println("# baseline for CoreBench: benchmark name and median ns/op");
+      out.println("# (measured on " + System.getProperty("os.arch") + " with Java " + System.getProperty("java.version")
+                  + ", available processors: " + Runtime.getRuntime().availableProcessors() + ")");
+      for (Benchmark benchmark : benchmarks) {
+        if (baseline.containsKey(benchmark.getName())) {
+          out.printf("%s %.1f%n", benchmark.getName(), baseline.get(benchmark.getName()));
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /** returns NHands different 13-card hands, in the order they were dealt */
+  private static Deck[] dealHands() {
+    Deck[] ret = new Deck[NHands];
+    XoshiroRandom rand = new XoshiroRandom(1);
+    Deck talon;
+    int i, j;
+    for (i = 0; i < NHands; i++) {
+      talon = new Deck();
+      talon.initStd52CardDeck();
+      talon.shuffle(rand);
+      ret[i] = new Deck();
+      for (j = 0; j < GameEngine.NDealtCards; j++) {
+        talon.moveCardTo(ret[i], talon.size() - 1);
+      }
+    }
+    return ret;
+  }
+
+  /** returns index of first card in the active player's hand that may be played */
+  private static int firstValidPlay(GameEngine game) {
+    int ret = 0;
+    while (!game.isValidPlay(ret)) {
+      ret++;
+    }
+    return ret;
+  }
+
+  /** returns index of a random card in the active player's hand that may be played */
+  private static int randomValidPlay(GameEngine game, XoshiroRandom rand) {
+    int handSize = game.getPlayer(game.getActivePlayer()).getHand().size();
+    int ret;
+    do {
+      ret = rand.nextInt(handSize);
+    } while (!game.isValidPlay(ret));
+    return ret;
+  }
+
+  /** returns names of the players in benchmarked games */
+  private static ArrayList<String> playerNames() {
+    return new ArrayList<String>(Arrays.asList("alice", "bob"));
+  }
+
+  /** shuffling a 52-card deck with a Random, which deals the same cards as other clients for the same seed */
+  private static class ShuffleSeedBench implements Benchmark {
+    private Deck deck = new Deck();
+    private Random rand = new Random(1);
+
+    public ShuffleSeedBench() {
+      deck.initStd52CardDeck();
+    }
+
+    public String getName() {
+      return "Deck.shuffle(Random)";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      for (int i = 0; i < ops; i++) {
+        deck.shuffle(rand);
+      }
+      return deck.getTopCard().getIndex();
+    }
+  }
+
+  /** shuffling a 52-card deck in place with an XoshiroRandom, as simulations do */
+  private static class ShuffleFastBench implements Benchmark {
+    private Deck deck = new Deck();
+    private XoshiroRandom rand = new XoshiroRandom(1);
+
+    public ShuffleFastBench() {
+      deck.initStd52CardDeck();
+    }
+
+    public String getName() {
+      return "Deck.shuffle(Xoshiro)";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      for (int i = 0; i < ops; i++) {
+        deck.shuffle(rand);
+      }
+      return deck.getTopCard().getIndex();
+    }
+  }
+
+  /** sorting a 13-card hand
+      (each hand is only unsorted the first time it is sorted, which makes no difference to sorts whose cost
+       doesn't depend on the order of the cards, including the current one and the selection sort it replaced) */
+  private static class SortBench implements Benchmark {
+    private Deck[] hands = dealHands();
+
+    public String getName() {
+      return "Deck.sort";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        hands[i % NHands].sort();
+        ret += hands[i % NHands].getCard(0).getIndex();
+      }
+      return ret;
+    }
+  }
+
+  /** looking up cards in a 13-card hand (a quarter of the lookups find the card) */
+  private static class GetEqualCardBench implements Benchmark {
+    private Deck[] hands = dealHands();
+
+    public String getName() {
+      return "Deck.getEqualCard";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        ret += hands[i % NHands].getEqualCard(Card.get(i % CardSet.NCards));
+      }
+      return ret;
+    }
+  }
+
+  /** finding the range of ranks per suit of a 13-card hand */
+  private static class DeckRangeBench implements Benchmark {
+    private Deck[] hands = dealHands();
+
+    public String getName() {
+      return "DeckRange";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        ret += new DeckRange(hands[i % NHands]).high[i % 4];
+      }
+      return ret;
+    }
+  }
+
+  /** checking whether a card in a 13-card hand follows suit */
+  private static class IsValidPlayBench implements Benchmark {
+    private Player[] players = new Player[NHands];
+    private Deck[] tricks = new Deck[NHands];
+
+    public IsValidPlayBench() {
+      XoshiroRandom rand = new XoshiroRandom(1);
+      Deck talon;
+      for (int i = 0; i < NHands; i++) {
+        talon = new Deck();
+        talon.initStd52CardDeck();
+        talon.shuffle(rand);
+        players[i] = new Player("alice", 0);
+        players[i].dealFrom(talon, GameEngine.NDealtCards);
+        tricks[i] = new Deck();
+        talon.moveCardTo(tricks[i], talon.size() - 1); // card led by the other player
+      }
+    }
+
+    public String getName() {
+      return "Player.isValidPlay";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        if (players[i % NHands].isValidPlay(i % GameEngine.NDealtCards, tricks[i % NHands])) {
+          ret++;
+        }
+      }
+      return ret;
+    }
+  }
+
+  /** playing a whole trick (including deciding the winner and dealing from the talon),
+      where each player plays the first valid card in their hand */
+  private static class PlayTrickBench implements Benchmark {
+    private GameEngine[] games;
+
+    public String getName() {
+      return "trick";
+    }
+
+    public void prepare(int ops) {
+      XoshiroRandom rand = new XoshiroRandom(ops);
+      games = new GameEngine[ops / (CardSet.NCards / 2) + 1];
+      for (int i = 0; i < games.length; i++) {
+        games[i] = new GameEngine(playerNames(), rand);
+      }
+    }
+
+    public long run(int ops) {
+      GameEngine game;
+      int i, j;
+      int gameIndex = 0;
+      long ret = 0;
+      for (i = 0; i < ops; i++) {
+        game = games[gameIndex];
+        for (j = 0; j < game.getNPlayers(); j++) {
+          game.play(firstValidPlay(game));
+        }
+        if (game.getGameOver()) {
+          ret += game.getFinalWinner();
+          gameIndex++;
+        }
+      }
+      return ret;
+    }
+  }
+
+  /** dealing a game and playing it to the end with random valid cards */
+  private static class PlayoutBench implements Benchmark {
+    private XoshiroRandom rand = new XoshiroRandom(1);
+
+    public String getName() {
+      return "playout";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      ArrayList<String> names = playerNames();
+      GameEngine game;
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        game = new GameEngine(names, rand);
+        while (!game.getGameOver()) {
+          game.play(randomValidPlay(game, rand));
+        }
+        ret += game.getFinalWinner();
+      }
+      return ret;
+    }
+  }
+
+  /** HeuristicAI deciding which card to play, in positions reached by random play
+      (the AI hasn't seen the earlier tricks, so it doesn't know the opponent's hand and never uses EndgameSolver here) */
+  private static class HeuristicAIBench implements Benchmark {
+    private GameEngine[] games = new GameEngine[NHands];
+    private HeuristicAI ai = new HeuristicAI(new Random(1), false);
+
+    public HeuristicAIBench() {
+      XoshiroRandom rand = new XoshiroRandom(1);
+      int nPlays;
+      for (int i = 0; i < NHands; i++) {
+        games[i] = new GameEngine(playerNames(), rand);
+        nPlays = rand.nextInt(CardSet.NCards - 1);
+        while (nPlays-- > 0) {
+          games[i].play(randomValidPlay(games[i], rand));
+        }
+      }
+    }
+
+    public String getName() {
+      return "HeuristicAI.chooseCard";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      GameEngine game;
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        game = games[i % NHands];
+        ai.newGame(game, game.getActivePlayer());
+        ai.update();
+        ret += ai.chooseCard();
+      }
+      return ret;
+    }
+  }
+
+  /** SamplingAI deciding which card to play with the default number of samples, in positions reached by random play while the talon has cards
+      (the AIs for both players watch every card played, so they know what an AI would know in a real game) */
+  private static class SamplingAIBench implements Benchmark {
+    private static final int NPositions = 64; /**< number of different positions to cycle through */
+    private SamplingAI[] ais = new SamplingAI[NPositions];
+
+    public SamplingAIBench() {
+      XoshiroRandom rand = new XoshiroRandom(1);
+      GameEngine game;
+      SamplingAI[] players = new SamplingAI[2];
+      int nPlays, i, j;
+      for (i = 0; i < NPositions; i++) {
+        game = new GameEngine(playerNames(), rand);
+        for (j = 0; j < 2; j++) {
+          players[j] = new SamplingAI(new XoshiroRandom(i * 2 + j), false);
+          players[j].newGame(game, j);
+          players[j].update();
+        }
+        nPlays = rand.nextInt(game.getTalon().size()); // each trick draws 2 talon cards, so this stays in the talon phase
+        while (nPlays-- > 0) {
+          game.play(randomValidPlay(game, rand));
+          players[0].update();
+          players[1].update();
+        }
+        ais[i] = players[game.getActivePlayer()];
+      }
+    }
+
+    public String getName() {
+      return "SamplingAI.chooseCard";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        ret += ais[i % NPositions].chooseCard();
+      }
+      return ret;
+    }
+  }
+
+  /** ISMCTSAI deciding which card to play with a fixed number of iterations (rather than a time budget, so every run does the same work),
+      in the same kind of positions as SamplingAIBench */
+  private static class ISMCTSAIBench implements Benchmark {
+    private static final int NPositions = 64; /**< number of different positions to cycle through */
+    private static final int Iterations = 1000; /**< number of iterations per decision */
+    private ISMCTSAI[] ais = new ISMCTSAI[NPositions];
+
+    public ISMCTSAIBench() {
+      XoshiroRandom rand = new XoshiroRandom(1);
+      GameEngine game;
+      ISMCTSAI[] players = new ISMCTSAI[2];
+      int nPlays, i, j;
+      for (i = 0; i < NPositions; i++) {
+        game = new GameEngine(playerNames(), rand);
+        for (j = 0; j < 2; j++) {
+          players[j] = new ISMCTSAI(new XoshiroRandom(i * 2 + j), Long.MAX_VALUE, Iterations, false);
+          players[j].newGame(game, j);
+          players[j].update();
+        }
+        nPlays = rand.nextInt(game.getTalon().size()); // each trick draws 2 talon cards, so this stays in the talon phase
+        while (nPlays-- > 0) {
+          game.play(randomValidPlay(game, rand));
+          players[0].update();
+          players[1].update();
+        }
+        ais[i] = players[game.getActivePlayer()];
+      }
+    }
+
+    public String getName() {
+      return "ISMCTSAI.chooseCard";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        ret += ais[i % NPositions].chooseCard();
+      }
+      return ret;
+    }
+  }
+
+  /** EndgameSolver finding the best card to lead when the talon has just run out, with 13 cards in each hand,
+      starting from an empty transposition table */
+  private static class EndgameSolverBench implements Benchmark {
+    private static final int NEndgames = 64; /**< number of different endgames to cycle through */
+    private long[][] hands = new long[NEndgames][2];
+    private Card.Suit[] trumps = new Card.Suit[NEndgames];
+    private EndgameSolver solver = new EndgameSolver();
+
+    public EndgameSolverBench() {
+      XoshiroRandom rand = new XoshiroRandom(1);
+      Deck deck;
+      int i, j;
+      for (i = 0; i < NEndgames; i++) {
+        deck = new Deck();
+        deck.initStd52CardDeck();
+        deck.shuffle(rand);
+        for (j = 0; j < GameEngine.NDealtCards * 2; j++) {
+          hands[i][j % 2] |= CardSet.of(deck.getCard(j));
+        }
+        trumps[i] = deck.getTopCard().getSuit();
+      }
+    }
+
+    public String getName() {
+      return "EndgameSolver";
+    }
+
+    public void prepare(int ops) {
+    }
+
+    public long run(int ops) {
+      long ret = 0;
+      for (int i = 0; i < ops; i++) {
+        solver.getTable().clear(); // otherwise later passes over the endgames would find their results in the table
+        ret += solver.solve(hands[i % NEndgames][0], hands[i % NEndgames][1], trumps[i % NEndgames], -1);
+      }
+      return ret;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+// LobbyBench.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.util.*;
+
+/** benchmark showing how the cost of lobby changes on the server scales with the number of connected clients
+    (run with "java -cp .:bench LobbyBench", see compile.txt)
+
+    All but LobbySize clients are playing 2-player games, and OpenGames games are waiting for players,
+    so the cost of a lobby change should not depend on the total number of clients. */
+public class LobbyBench {
+  private static final int[] ClientCounts = {100, 1000, 5000, 10000}; /**< numbers of clients to measure */
+  private static final int LobbySize = 50; /**< number of clients that haven't joined a game */
+  private static final int OpenGames = 10; /**< number of games (with 1 player each) that haven't started */
+  private static final int NChanges = 2000; /**< number of lobby changes to time per client count */
+  private static final int EventsPerFlush = 8; /**< number of messages the server handles in each round of events before writing to clients,
+                                                     as if the selector reported this many ready clients at once */
+
+  public static void main(String[] args) {
+    PrintStream stdout = System.out;
+    System.out.println("clients  us/lobby change  bytes/lobby change  writes/lobby change  encodes saved/broadcast  us/rejected sign in");
+    for (int nClients : ClientCounts) {
+      ArrayList<PlayerData> players = new ArrayList<PlayerData>();
+      ArrayList<PlayerSocket> clients = new ArrayList<PlayerSocket>();
+      ArrayList<NullChannel> channels = new ArrayList<NullChannel>();
+      ServerApp server;
+      long start, changeTime, signInTime, startBytes, changeBytes, startWrites, startBroadcasts, startEncodesSaved;
+      double changeWrites, encodesSaved;
+      int nPlaying = nClients - LobbySize - OpenGames;
+      int i;
+      System.setOut(new PrintStream(new OutputStream() {
+        public void write(int b) {
+          // discard server log messages
+        }
+      }));
+      for (i = 0; i < nClients; i++) {
+        players.add(new PlayerData("player" + i, "pw", 0, 0));
+      }
+      server = new ServerApp(players);
+      for (i = 0; i < nClients; i++) {
+        NullChannel channel = new NullChannel();
+        PlayerSocket client = new PlayerSocket(channel);
+        client.read(); // receive hello frame
+        channels.add(channel);
+        server.addClient(client);
+        handle(server, client, signIn("player" + i));
+        clients.add(client);
+        if (i < nPlaying && i % 2 == 1) {
+          // start a game with this client and the previous one
+          handle(server, clients.get(i - 1), hostGame(null));
+          handle(server, client, hostGame("player" + (i - 1)));
+          handle(server, client, new StartGameMsg());
+        }
+        else if (i >= nPlaying && i < nPlaying + OpenGames) {
+          handle(server, client, hostGame(null));
+        }
+      }
+      // time a lobby client hosting a game then leaving it
+      for (int pass = 0; pass < 2; pass++) { // first pass warms up the JIT
+        startBytes = bytesWritten(channels);
+        startWrites = writes(channels);
+        startBroadcasts = server.getBroadcasts();
+        startEncodesSaved = server.getEncodesSaved();
+        start = System.nanoTime();
+        for (i = 0; i < NChanges; i++) {
+          PlayerSocket client = clients.get(nClients - 1 - i % LobbySize);
+          server.handleMessage(client, hostGame(null));
+          server.handleMessage(client, new GameSessionMsg(new GameSession()));
+          if ((i + 1) % (EventsPerFlush / 2) == 0) {
+            server.flushClients();
+          }
+        }
+        server.flushClients();
+        changeTime = (System.nanoTime() - start) / (NChanges * 2);
+        changeBytes = (bytesWritten(channels) - startBytes) / (NChanges * 2);
+        changeWrites = (writes(channels) - startWrites) / (double)(NChanges * 2);
+        encodesSaved = (server.getEncodesSaved() - startEncodesSaved) / (double)(server.getBroadcasts() - startBroadcasts);
+        start = System.nanoTime();
+        for (i = 0; i < NChanges; i++) {
+          handle(server, clients.get(0), signIn("player" + (i % nClients))); // rejected since player is already signed in
+        }
+        signInTime = (System.nanoTime() - start) / NChanges;
+        if (pass == 1) {
+          stdout.printf("%7d  %15.1f  %18d  %19.1f  %23.1f  %19.2f%n", nClients, changeTime / 1000.0, changeBytes, changeWrites, encodesSaved,
+                        signInTime / 1000.0);
+        }
+      }
+      System.setOut(stdout);
+    }
+  }
+  /** have server handle specified message as a round of events by itself, then write what it sent */
+  private static void handle(ServerApp server, PlayerSocket client, Object msg) {
+    server.handleMessage(client, msg);
+    server.flushClients();
+  }
+
+  /** returns total number of calls to write() on specified channels */
+  private static long writes(ArrayList<NullChannel> channels) {
+    long ret = 0;
+    for (NullChannel channel : channels) {
+      ret += channel.getWrites();
+    }
+    return ret;
+  }
+
+  /** returns total number of bytes written to specified channels */
+  private static long bytesWritten(ArrayList<NullChannel> channels) {
+    long ret = 0;
+    for (NullChannel channel : channels) {
+      ret += channel.getBytesWritten();
+    }
+    return ret;
+  }
+
+  /** returns message to sign in to existing player of specified name */
+  private static SignInMsg signIn(String name) {
+    SignInMsg ret = new SignInMsg();
+    ret.playerName = name;
+    ret.password = "pw";
+    ret.newPlayer = false;
+    return ret;
+  }
+
+  /** returns message to join game containing specified player, or to host a new game if null */
+  private static GameSessionMsg hostGame(String player) {
+    GameSession ret = new GameSession();
+    ret.playing = true;
+    if (player != null) {
+      ret.players.add(player);
+    }
+    return new GameSessionMsg(ret);
+  }
+}
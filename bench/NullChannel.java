@@ -0,0 +1,74 @@
+// NullChannel.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.nio.*;
+import java.nio.channels.*;
+
+/** channel that stands in for a client connection in benchmarks:
+    reads return a binary protocol hello frame and then nothing, and writes are counted then discarded
+    (a gathering write counts as a single write, like the single system call it is on a socket channel) */
+public class NullChannel implements ByteChannel, GatheringByteChannel {
+  private ByteBuffer hello; /**< hello frame (with length prefix) that hasn't been read yet */
+  private long bytesWritten; /**< total number of bytes written to this channel */
+  private long writes; /**< number of calls to write() */
+
+  /** constructor for null channel */
+  public NullChannel() {
+    byte[] frame = BinaryMsgCodec.hello(BinaryMsgCodec.ProtocolVersion);
+    hello = ByteBuffer.allocate(4 + frame.length);
+    hello.putInt(frame.length);
+    hello.put(frame);
+    hello.flip();
+  }
+
+  public int read(ByteBuffer dst) {
+    int n = Math.min(dst.remaining(), hello.remaining());
+    for (int i = 0; i < n; i++) {
+      dst.put(hello.get());
+    }
+    return n;
+  }
+
+  public int write(ByteBuffer src) {
+    int n = src.remaining();
+    src.position(src.limit());
+    bytesWritten += n;
+    writes++;
+    return n;
+  }
+
+  public long write(ByteBuffer[] srcs, int offset, int length) {
+    long n = 0;
+    for (int i = offset; i < offset + length; i++) {
+      n += srcs[i].remaining();
+      srcs[i].position(srcs[i].limit());
+    }
+    bytesWritten += n;
+    writes++;
+    return n;
+  }
+
+  public long write(ByteBuffer[] srcs) {
+    return write(srcs, 0, srcs.length);
+  }
+
+  public boolean isOpen() {
+    return true;
+  }
+
+  public void close() {
+  }
+
+  /** getter for total number of bytes written */
+  public final long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /** getter for number of calls to write() (including gathering writes) */
+  public final long getWrites() {
+    return writes;
+  }
+}
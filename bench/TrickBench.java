@@ -0,0 +1,62 @@
+// TrickBench.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.lang.management.*;
+import java.util.*;
+
+/** benchmark measuring the time and heap allocation of dealing games and resolving tricks with GameEngine
+    (run with "java -cp .:bench TrickBench", see compile.txt)
+
+    Each game is dealt with an XoshiroRandom and played to the end by always playing the first valid card in the active player's hand.
+    Allocation is counted with the JVM's per-thread allocation counter, so it is exact rather than sampled. */
+public class TrickBench {
+  private static final int NGames = 20000; /**< number of games to deal and play per pass */
+  private static final int NPasses = 3; /**< number of passes (all but the last warm up the JIT) */
+
+  public static void main(String[] args) {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    ArrayList<String> names = new ArrayList<String>(Arrays.asList("alice", "bob"));
+    XoshiroRandom rand = new XoshiroRandom(1);
+    GameEngine game;
+    long dealTime, dealBytes, playTime, playBytes, counterBytes, start, startBytes, tricks;
+    int pass, i, card;
+    // the allocation counter may allocate when it is read, so measure that and subtract it
+    startBytes = threads.getThreadAllocatedBytes(threadId);
+    counterBytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    System.out.println("games  us/deal  bytes/deal  us/trick  bytes/trick");
+    for (pass = 0; pass < NPasses; pass++) {
+      dealTime = 0;
+      dealBytes = 0;
+      playTime = 0;
+      playBytes = 0;
+      tricks = 0;
+      for (i = 0; i < NGames; i++) {
+        startBytes = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        game = new GameEngine(names, rand);
+        dealTime += System.nanoTime() - start;
+        dealBytes += threads.getThreadAllocatedBytes(threadId) - startBytes - counterBytes;
+        startBytes = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        while (!game.getGameOver()) {
+          card = 0;
+          while (!game.isValidPlay(card)) {
+            card++;
+          }
+          game.play(card);
+        }
+        playTime += System.nanoTime() - start;
+        playBytes += threads.getThreadAllocatedBytes(threadId) - startBytes - counterBytes;
+        tricks += game.getPlayer(0).getScore() + game.getPlayer(1).getScore();
+      }
+      if (pass == NPasses - 1) {
+        System.out.printf("%5d  %7.2f  %10d  %8.3f  %11.1f%n", NGames, dealTime / 1000.0 / NGames, dealBytes / NGames,
+                          playTime / 1000.0 / tricks, playBytes / (double)tricks);
+      }
+    }
+  }
+}
@@ -0,0 +1,164 @@
+// LegacyClientTest.java
+// Copyright (c) 2012 Andrew Downing
+// Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+// The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/** test that the server still talks to clients from before messages were sent in frames
+    (run with "java -cp .:test LegacyClientTest", see compile.txt)
+
+    The client here networks like the original PlayerSocket did: it writes a Java object stream straight to the socket,
+    and reads the server's messages with an ObjectInputStream. Its messages are sent a few bytes at a time,
+    so that the server has to put together messages that arrive over several reads.
+    This is checked with the server's channel in non-blocking mode (as in ServerApp.loop())
+    and in blocking mode (as in ServerApp.loopThreads()). The test throws an exception if anything doesn't match. */
+public class LegacyClientTest {
+  private static final int ChunkSize = 7; /**< number of bytes that the client sends at a time */
+  private static final int NReplies = 2 * ObjectStreamCodec.ResetMessages + 1; /**< number of messages sent to the client, so that the server's stream is reset */
+  private static final int LongPasswordLength = 4000; /**< length of password in the client's large message */
+  private static final int Timeout = 10000; /**< how long to wait for a message before failing, in milliseconds */
+
+  public static void main(String[] args) throws Exception {
+    check(false);
+    System.out.println("Non-blocking channel: OK");
+    check(true);
+    System.out.println("Blocking channel: OK");
+    System.out.println("LegacyClientTest passed");
+  }
+
+  /** connect a client that sends an unframed object stream to a PlayerSocket, and check the messages that each side receives */
+  private static void check(boolean blocking) throws Exception {
+    ServerSocketChannel serverChannel = ServerSocketChannel.open();
+    SocketChannel channel;
+    LegacyClient client;
+    Thread clientThread;
+    PlayerSocket server;
+    SignInMsg signIn;
+    int i;
+    serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    client = new LegacyClient(serverChannel.socket().getLocalPort());
+    clientThread = new Thread(client, "LegacyClient");
+    clientThread.start();
+    channel = serverChannel.accept();
+    serverChannel.close();
+    channel.configureBlocking(blocking);
+    server = new PlayerSocket(channel);
+    // the client writes the same message object twice, so the second one arrives as a reference to the first
+    for (i = 0; i < 2; i++) {
+      signIn = (SignInMsg)await(server, SignInMsg.class);
+      expect("alice".equals(signIn.playerName) && "pw".equals(signIn.password) && signIn.newPlayer, "sign in message " + i);
+    }
+    signIn = (SignInMsg)await(server, SignInMsg.class);
+    expect(signIn.password.length() == LongPasswordLength, "large message");
+    for (i = 0; i < NReplies; i++) {
+      server.write(new StringMsg(StringMsg.MsgType.SignInSuccess, "reply " + i));
+    }
+    await(server, CloseConnectionMsg.class);
+    server.disconnect();
+    clientThread.join();
+    if (client.error != null) {
+      throw client.error;
+    }
+    expect(client.nReplies == NReplies, "client received " + client.nReplies + " of " + NReplies + " replies");
+  }
+
+  /** returns next message from specified socket, which must be of specified class */
+  private static Object await(PlayerSocket socket, Class<?> msgClass) throws Exception {
+    long end = System.currentTimeMillis() + Timeout;
+    Object msg;
+    while (System.currentTimeMillis() < end) {
+      msg = socket.read();
+      if (msg != null) {
+        expect(msgClass.isInstance(msg), "expected " + msgClass.getName() + " but received " + msg.getClass().getName());
+        return msg;
+      }
+      Thread.sleep(1);
+    }
+    throw new IllegalStateException("Timed out waiting for " + msgClass.getName());
+  }
+
+  /** throw exception with specified description if condition is false */
+  private static void expect(boolean condition, String description) {
+    if (!condition) {
+      throw new IllegalStateException("Failed: " + description);
+    }
+  }
+
+  /** client that networks like PlayerSocket did before messages were sent in frames */
+  private static class LegacyClient implements Runnable {
+    private final int port; /**< port that server is listening on */
+    private int nReplies; /**< number of expected replies received from server */
+    private Exception error; /**< exception thrown by client (null if none) */
+
+    /** constructor for legacy client */
+    public LegacyClient(int newPort) {
+      port = newPort;
+    }
+
+    public void run() {
+      Socket socket;
+      ObjectOutputStream out;
+      ObjectInputStream in;
+      SignInMsg signIn = new SignInMsg();
+      SignInMsg longSignIn = new SignInMsg();
+      StringMsg reply;
+      char[] password = new char[LongPasswordLength];
+      try {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(Timeout);
+        // same order as the original PlayerSocket, which waits for the server's stream header before sending any messages
+        out = new ObjectOutputStream(new ChunkedOutputStream(socket.getOutputStream()));
+        in = new ObjectInputStream(socket.getInputStream());
+        signIn.playerName = "alice";
+        signIn.password = "pw";
+        signIn.newPlayer = true;
+        out.writeObject(signIn);
+        out.flush();
+        out.writeObject(signIn);
+        out.flush();
+        Arrays.fill(password, 'x');
+        longSignIn.password = new String(password);
+        out.writeObject(longSignIn);
+        out.flush();
+        for (nReplies = 0; nReplies < NReplies; nReplies++) {
+          reply = (StringMsg)in.readObject();
+          expect(reply.message.equals("reply " + nReplies), "reply " + nReplies);
+        }
+        out.writeObject(new CloseConnectionMsg());
+        out.flush();
+        socket.close();
+      }
+      catch (Exception ex) {
+        error = ex;
+      }
+    }
+  }
+
+  /** output stream that sends bytes in chunks of ChunkSize, waiting briefly after each so that they arrive separately */
+  private static class ChunkedOutputStream extends FilterOutputStream {
+    /** constructor for chunked output stream */
+    public ChunkedOutputStream(OutputStream newOut) {
+      super(newOut);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      int i;
+      for (i = 0; i < len; i += ChunkSize) {
+        out.write(b, off + i, Math.min(ChunkSize, len - i));
+        out.flush();
+        try {
+          Thread.sleep(0, 100000);
+        }
+        catch (InterruptedException ex) {
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+}